@@ -1,152 +1,814 @@
 package qirkat;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import static qirkat.Move.*;
 import static qirkat.PieceColor.*;
+import static qirkat.TranspositionTable.Bound.*;
 
 /** A Player that computes its own moves.
  *  @author Yingying Chen
  */
 class AI extends Player {
 
-    /** Maximum minimax search depth before going to static evaluation. */
+    /** Maximum minimax search depth before going to static evaluation,
+     *  when there is no time budget. */
 
     private static final int MAX_DEPTH = 5;
 
-    /** A position magnitude indicating a win (for white if positive, black
-     *  if negative). */
+    /** Half the width of the aspiration window around the previous
+     *  iteration's value. */
+    static final int ASPIRATION_WINDOW = Board.PIECE_VALUE / 2;
+
+    /** Limit on the depth of iterative deepening under a time budget. */
+    private static final int MAX_TIMED_DEPTH = 64;
+
+    /** Number of nodes searched between checks of the clock. */
+    private static final int CLOCK_INTERVAL = 128;
+
+    /** A position magnitude indicating a win (for the player to move if
+     *  positive, the opponent if negative) at the root.  A win or loss
+     *  further off is less extreme (see lossValue). */
     private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+    /** More plies than any game can last. */
+    private static final int MAX_PLY = 1 << 16;
     /** A magnitude greater than a normal value. */
     private static final int INFTY = Integer.MAX_VALUE;
 
-    /** A new AI for GAME that will play MYCOLOR. */
+    /** A new AI for GAME that will play MYCOLOR, searching with the
+     *  number of threads given on the command line. */
     AI(Game game, PieceColor myColor) {
+        this(game, myColor, Main.threads());
+    }
+
+    /** A new AI for GAME that will play MYCOLOR, searching with THREADS
+     *  threads and using the tablebase given on the command line. */
+    AI(Game game, PieceColor myColor, int threads) {
+        this(game, myColor, threads, Main.tablebase());
+    }
+
+    /** A new AI for GAME that will play MYCOLOR, searching with THREADS
+     *  threads and using TABLEBASE (none if null). */
+    AI(Game game, PieceColor myColor, int threads, Tablebase tablebase) {
         super(game, myColor);
+        _table = new TranspositionTable(Main.tableMegabytes(),
+                                        Main.replacement());
+        _tablebase = tablebase;
+        _searches = new Search[Math.max(1, threads)];
+        for (int i = 0; i < _searches.length; i += 1) {
+            _searches[i] = new Search();
+        }
     }
 
     @Override
     Move myMove() {
+        synchronized (this) {
+            _choosingMove = true;
+        }
+        stopPondering();
         Main.startTiming();
 
         Move move = findMove();
-        Main.endTiming();
+        synchronized (this) {
+            _choosingMove = false;
+            _stop = false;
+        }
+        long nodes, cutoffs, firstMoveCutoffs;
+        nodes = cutoffs = firstMoveCutoffs = 0;
+        for (Search search : _searches) {
+            nodes += search._nodes;
+            cutoffs += search._cutoffs;
+            firstMoveCutoffs += search._firstMoveCutoffs;
+        }
+        Main.endTiming(String.format(", %d nodes, %d%% first-move cutoffs"
+                                     + ", depth %d, value %d, pv %s",
+                                     nodes, cutoffs == 0 ? 0
+                                     : 100 * firstMoveCutoffs / cutoffs,
+                                     _completedDepth, _value,
+                                     principalVariation(move)));
 
         return move;
     }
 
+    /** Return the value, to me, of the move chosen by my last call to
+     *  myMove, as found by the last iteration it completed. */
+    int value() {
+        return _value;
+    }
+
+    /** Forget the results of all my earlier searches, as at the start of
+     *  a new game.  Otherwise, my transposition table and move-ordering
+     *  heuristics carry over from one move to the next. */
+    void clear() {
+        stopPondering();
+        _table.clear();
+        for (Search search : _searches) {
+            search.clear();
+        }
+    }
+
+    /** Start searching, in the background, the current position, in
+     *  which my opponent is to move, and continue until stopPondering is
+     *  called or MAX_TIMED_DEPTH is reached.  The search considers all
+     *  of my opponent's replies, so whichever one is made, my next
+     *  search finds the results for the positions after it in my
+     *  transposition table. */
+    void ponder() {
+        stopPondering();
+        Board position = new Board(board());
+        Thread ponderer = new Thread(() -> search(position, Long.MAX_VALUE,
+                                                  MAX_TIMED_DEPTH));
+        ponderer.setDaemon(true);
+        synchronized (this) {
+            _ponderer = ponderer;
+        }
+        ponderer.start();
+    }
+
+    /** Stop the search started by ponder, if it is still running, and
+     *  wait for it to finish. */
+    void stopPondering() {
+        Thread ponderer;
+        synchronized (this) {
+            ponderer = _ponderer;
+            if (ponderer == null) {
+                return;
+            }
+            _ponderStop = true;
+        }
+        while (true) {
+            try {
+                ponderer.join();
+                break;
+            } catch (InterruptedException excp) {
+                /* Keep waiting: the searching thread stops soon. */
+            }
+        }
+        synchronized (this) {
+            _ponderer = null;
+            _ponderStop = false;
+        }
+    }
+
+    /** Stop my current searches as soon as possible: any pondering, and
+     *  the search for my move if myMove is running, which then returns
+     *  the best move found so far (or the first move it tries if it has
+     *  not yet searched any).  A stop that arrives at any point during
+     *  myMove takes effect, but it does not carry over to later
+     *  searches.  May be called from any thread. */
+    synchronized void stop() {
+        if (_choosingMove) {
+            _stop = true;
+        }
+        if (_ponderer != null) {
+            _ponderStop = true;
+        }
+    }
+
+    /** Return my best move from the current position, which must have a
+     *  move, as found by searching to DEPTH with no time limit, and set
+     *  value() to its value.  Used in testing. */
+    Move searchTo(int depth) {
+        return unpack(search(new Board(board()), Long.MAX_VALUE, depth));
+    }
+
     /** Return a move for me from the current position, assuming there
-     *  is a move. */
+     *  is a move.  Takes the move from my tablebase if it covers the
+     *  position, and otherwise searches to MAX_DEPTH if the game sets no
+     *  time budget, and otherwise until the budget runs out or stop is
+     *  called (see search).  The search works with packed moves, and
+     *  converts only its result to a Move. */
     private Move findMove() {
-        Board b = new Board(board());
-        if (myColor() == WHITE) {
-            findMove(b, MAX_DEPTH, true, 1, -INFTY, INFTY);
+        int budget = game().moveTime();
+        Board position = new Board(board());
+        long best = tablebaseMove(position);
+        if (best != 0) {
+            for (Search search : _searches) {
+                search.clearStatistics();
+            }
+        } else if (budget > 0) {
+            best = search(position, System.currentTimeMillis() + budget,
+                          MAX_TIMED_DEPTH);
         } else {
-            findMove(b, MAX_DEPTH, true, -1, -INFTY, INFTY);
+            best = search(position, Long.MAX_VALUE, MAX_DEPTH);
         }
-        return _lastFoundMove;
+        return best == 0 ? null : unpack(best);
     }
 
-    /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
+    /** Return the packed move from POSITION that wins soonest, or else
+     *  loses latest, according to my tablebase, setting _value to its
+     *  value and _completedDepth to 0.  Return 0 if there is no
+     *  tablebase or it does not settle all the moves from POSITION. */
+    private long tablebaseMove(Board position) {
+        if (_tablebase == null || !_tablebase.covers(position)) {
+            return 0;
+        }
+        MoveBuffer moves = new MoveBuffer();
+        position.getMoves(moves);
+        long best = 0;
+        int bestValue = -INFTY;
+        for (int i = 0; i < moves.size(); i += 1) {
+            position.makeTrialMove(moves.get(i));
+            int entry = _tablebase.probe(position);
+            position.undoTrialMove();
+            if (entry == Tablebase.UNKNOWN) {
+                return 0;
+            }
+            int value = -tablebaseValue(entry, 1);
+            if (value > bestValue) {
+                best = moves.get(i);
+                bestValue = value;
+            }
+        }
+        _value = bestValue;
+        _completedDepth = 0;
+        return best;
+    }
 
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. FIXed. */
-    private int findMove(Board board, int depth, boolean saveMove, int sense,
-                         int alpha, int beta) {
-        if (depth == 0 || !board.isMove()) {
-            return simpleFindMove(board, sense, alpha, beta);
+    /** Return the value to the player to move of a position PLY plies
+     *  from the root whose tablebase entry is ENTRY (see lossValue). */
+    private static int tablebaseValue(int entry, int ply) {
+        int value = lossValue(ply + Tablebase.distance(entry));
+        return Tablebase.wins(entry) ? -value : value;
+    }
+
+    /** Return the value to the player to move of a position that the
+     *  player to move loses, the game ending PLY plies from the root.
+     *  The player to move wins a position worth the negation of this
+     *  value, so that quicker wins and slower losses are preferred. */
+    private static int lossValue(int ply) {
+        return -(WINNING_VALUE - ply);
+    }
+
+    /** Return true iff VALUE is the value of a win or a loss (see
+     *  lossValue). */
+    private static boolean decisive(int value) {
+        return Math.abs(value) > WINNING_VALUE - MAX_PLY;
+    }
+
+    /** Return VALUE, the value of a position PLY plies from the root, as
+     *  stored in my transposition table, where wins and losses count
+     *  plies from the position itself, so that they stay correct
+     *  wherever in the tree it recurs. */
+    private static int tableValue(int value, int ply) {
+        if (!decisive(value)) {
+            return value;
         }
+        return value > 0 ? value + ply : value - ply;
+    }
 
-        int best = sense * -INFTY;
-        for (Move M: board.getMoves()) {
-            Board next = new Board(board);
-            next.makeMove(M);
-            int respond = findMove(next, depth - 1, false, -sense, alpha, beta);
+    /** Return the value of a position PLY plies from the root whose
+     *  value as stored in my transposition table is VALUE (see
+     *  tableValue). */
+    private static int searchValue(int value, int ply) {
+        if (!decisive(value)) {
+            return value;
+        }
+        return value > 0 ? value - ply : value + ply;
+    }
 
-            if (sense == 1) {
-                if (respond > best) {
-                    best = respond;
-                    if (saveMove) {
-                        _lastFoundMove = M;
-                    }
-                    alpha = Integer.max(alpha, respond);
-                    if (beta <= alpha) {
-                        break;
-                    }
+    /** Return the best packed move for the player to move in POSITION,
+     *  which must have a move.  Each searching thread makes and takes
+     *  back moves on its own private copy of POSITION.  The search
+     *  deepens iteratively, to MAXDEPTH or until DEADLINE (as from
+     *  System.currentTimeMillis) passes or the search is stopped.  In
+     *  the latter cases, the result is the best move of the unfinished
+     *  iteration if one has already been shown to beat the others
+     *  searched (see _provenMove), and otherwise the move from the last
+     *  completed iteration, or, failing that, the first move tried.
+     *  After the first, each iteration starts with an aspiration window
+     *  of ASPIRATION_WINDOW on either side of the previous value, and
+     *  searches again with a full window if the value falls outside
+     *  it. */
+    private long search(Board position, long deadline, int maxDepth) {
+        long best = 0;
+
+        _table.newSearch();
+        for (int i = 0; i < _searches.length; i += 1) {
+            _searches[i].start(i == 0 ? position : new Board(position));
+        }
+        _deadline = deadline;
+        _timeUp = false;
+        _completedDepth = 0;
+        _value = 0;
+        for (int depth = 1; depth <= maxDepth; depth += 1) {
+            _previousMove = best;
+            _rootDepth = depth;
+            _provenMove = 0;
+            int alpha = -INFTY, beta = INFTY, value;
+            if (depth > 1 && !decisive(_value)) {
+                alpha = _value - ASPIRATION_WINDOW;
+                beta = _value + ASPIRATION_WINDOW;
+            }
+            while (true) {
+                _lastFoundMove = 0;
+                if (_searches.length == 1) {
+                    Search search = _searches[0];
+                    value = search.findMove(search._board, depth, true,
+                                            alpha, beta);
+                } else {
+                    value = parallelFindMove(depth, alpha, beta);
                 }
-            } else {
+                if (_timeUp || (alpha < value && value < beta)) {
+                    break;
+                }
+                alpha = -INFTY;
+                beta = INFTY;
+            }
+            if (_timeUp) {
+                if (_provenMove != 0) {
+                    best = _provenMove;
+                }
+                break;
+            }
+            best = _lastFoundMove;
+            _value = value;
+            _completedDepth = depth;
+            if (System.currentTimeMillis() >= _deadline) {
+                break;
+            }
+        }
+        if (best == 0) {
+            best = _searches[0].rootMoves(position).next();
+        }
+        return best;
+    }
 
-                if (respond < best) {
-                    best = respond;
+    /** Search the current position to DEPTH with window ALPHA .. BETA,
+     *  and return its value, as for Search.findMove, dividing the root
+     *  moves among all my Searches.  The first root move is searched
+     *  alone to establish a bound; the others are then searched in
+     *  parallel against that bound.  Sets _lastFoundMove to the first
+     *  root move with the best value, which is the move the sequential
+     *  search finds. */
+    private int parallelFindMove(int depth, int alpha, int beta) {
+        Search first = _searches[0];
+        long key = first._board.key();
+        MoveBuffer moves = first._rootMoves;
+        MoveSource source = first.rootMoves(first._board);
+        moves.clear();
+        for (long mov = source.next(); mov != 0; mov = source.next()) {
+            moves.add(mov);
+        }
+        int n = moves.size();
+        int[] values = new int[n];
+        if (n == 0) {
+            return lossValue(0);
+        }
 
-                    if (saveMove) {
-                        _lastFoundMove = M;
-                    }
-                    beta = Integer.min(beta, respond);
-                    if (beta <= alpha) {
-                        break;
-                    }
+        values[0] = first.searchMove(first._board, moves.get(0), depth,
+                                     alpha, beta, true);
+        _lastFoundMove = moves.get(0);
+        if (values[0] > alpha && !_timeUp) {
+            _provenMove = moves.get(0);
+        }
+        if (_timeUp || values[0] >= beta) {
+            return values[0];
+        }
+        int bound = Math.max(alpha, values[0]);
+        AtomicInteger next = new AtomicInteger(1);
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[_searches.length];
+        for (int t = 0; t < tasks.length; t += 1) {
+            Search search = _searches[t];
+            tasks[t] = pool(_searches.length).submit(() -> {
+                for (int i = next.getAndIncrement(); i < n;
+                     i = next.getAndIncrement()) {
+                    values[i] = search.searchMove(search._board, moves.get(i),
+                                                  depth, bound, beta, false);
                 }
+            });
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        if (_timeUp) {
+            return 0;
+        }
+
+        int best = 0;
+        for (int i = 1; i < n; i += 1) {
+            if (values[i] > values[best]) {
+                best = i;
             }
         }
-        return best;
+        _lastFoundMove = moves.get(best);
+        _table.store(key, depth, values[best] <= alpha ? UPPER
+                     : values[best] >= beta ? LOWER : EXACT,
+                     tableValue(values[best], 0), moves.get(best));
+        return values[best];
     }
 
-    /** one level search for a move.
-     * @param board the current board.
-     * @param sense sense fot min/max search.
-     * @param alpha minimal value or value < ALPHA if SENSE==-1.
-     * @param beta maximal value or have value > BETA if SENSE==1.
-     * @return Find a move from position BOARD and return its value. */
-    private int simpleFindMove(Board board, int sense, int alpha, int beta) {
-        if (sense == 1 && !board.isMove()) {
-            return -WINNING_VALUE;
-        }
-        if (sense == -1 && !board.isMove()) {
-            return WINNING_VALUE;
-        }
-        int best = sense * -INFTY;
-
-        for (Move M: board.getMoves()) {
-            Board next = new Board(board);
-            next.makeMove(M);
-            int nextVal = staticScore(next);
-            if (sense == 1) {
-                if (nextVal >= best) {
-                    best = nextVal;
-                    alpha = Integer.max(alpha, nextVal);
-                    if (beta <= alpha) {
-                        break;
-                    }
+    /** Return the principal variation found by the last search, starting
+     *  with its chosen move FIRST (null if none): the sequence of moves
+     *  that both players are expected to make, as recorded in the
+     *  transposition table, separated by blanks. */
+    private String principalVariation(Move first) {
+        Board board = new Board(board());
+        StringBuilder pv = new StringBuilder();
+        long mov = first == null ? 0 : pack(first);
+        for (int n = 0; n < _completedDepth && mov != 0 && board.isLegal(mov);
+             n += 1) {
+            if (n > 0) {
+                pv.append(' ');
+            }
+            pv.append(unpack(mov));
+            board.makeTrialMove(mov);
+            mov = _table.move(board.key());
+        }
+        return pv.toString();
+    }
+
+    /** Return a pool of THREADS worker threads for parallel searches,
+     *  shared by all AIs that use that many threads. */
+    private static synchronized ForkJoinPool pool(int threads) {
+        if (_pool == null || _pool.getParallelism() != threads) {
+            if (_pool != null) {
+                _pool.shutdown();
+            }
+            _pool = new ForkJoinPool(threads);
+        }
+        return _pool;
+    }
+
+    /** The packed move found by the last call to one of the ...FindMove
+     *  methods below.  Only meaningful if that search was not stopped
+     *  early. */
+    private long _lastFoundMove;
+
+    /** The packed root move of the current iteration that has the best
+     *  value so far, if that value beats the lower bound of the root
+     *  window, and otherwise 0.  Such a move is better than all other
+     *  moves searched so far to the current depth, including the
+     *  previous iteration's choice (which is searched first), and is
+     *  therefore the best choice if the iteration is cut short. */
+    private long _provenMove;
+
+    /** The packed move found by the previous iteration of the current
+     *  search (0 if none). */
+    private long _previousMove;
+
+    /** The value found by the last completed iteration of the current
+     *  search. */
+    private int _value;
+
+    /** The state of one searching thread: its copy of the board, its
+     *  move-ordering heuristics, and its statistics.  All Searches
+     *  share the AI's transposition table and time limit. */
+    private class Search {
+
+        /** Prepare to search from BOARD, a private copy of the current
+         *  position.  The killer moves, which were recorded relative to
+         *  an earlier root, are discarded, and the history scores are
+         *  halved, so that recent cutoffs outweigh older ones. */
+        void start(Board board) {
+            _board = board;
+            clearStatistics();
+            for (long[] killers : _killers) {
+                Arrays.fill(killers, 0);
+            }
+            for (int[] history : _history) {
+                for (int t = 0; t < history.length; t += 1) {
+                    history[t] >>= 1;
                 }
+            }
+        }
+
+        /** Reset my counts of nodes and cutoffs. */
+        void clearStatistics() {
+            _nodes = _cutoffs = _firstMoveCutoffs = 0;
+        }
+
+        /** Discard my move-ordering heuristics. */
+        void clear() {
+            for (long[] killers : _killers) {
+                Arrays.fill(killers, 0);
+            }
+            for (int[] history : _history) {
+                Arrays.fill(history, 0);
+            }
+        }
+
+        /** Make the packed move MOV on BOARD, and return its value to the
+         *  player making it: the negated value of the resulting position
+         *  searched to DEPTH - 1 levels, with the window ALPHA .. BETA as
+         *  seen by that player.  Unless FULL, first search with a null
+         *  window just above ALPHA, which suffices to show that the move
+         *  is no better than ALPHA, and search again with the whole window
+         *  only if the move turns out to be better.  BOARD is restored on
+         *  return. */
+        int searchMove(Board board, long mov, int depth, int alpha,
+                       int beta, boolean full) {
+            board.makeTrialMove(mov);
+            int value;
+            if (full) {
+                value = -findMove(board, depth - 1, false, -beta, -alpha);
             } else {
-                if (nextVal <= best) {
-                    best = nextVal;
-                    beta = Integer.min(beta, nextVal);
-                    if (beta <= alpha) {
-                        break;
-                    }
+                value = -findMove(board, depth - 1, false, -alpha - 1,
+                                  -alpha);
+                if (alpha < value && value < beta && !_timeUp) {
+                    value = -findMove(board, depth - 1, false, -beta,
+                                      -alpha);
+                }
+            }
+            board.undoTrialMove();
+            return value;
+        }
+
+        /** Return the source of moves at PLY > 0 plies from the root,
+         *  prepared to produce the moves from BOARD: HASHMOVE (the best
+         *  move from an earlier iteration or search), then captures,
+         *  longest chains first, then the killer moves for PLY, and then
+         *  the other moves in decreasing order of their history
+         *  scores. */
+        private MoveSource moves(Board board, long hashMove, int ply) {
+            MoveSource source = moveSource(ply);
+            source.start(board, hashMove, killers(ply), _history);
+            return source;
+        }
+
+        /** Return the source of moves at the root, prepared to produce the
+         *  moves from BOARD: the move found by the previous iteration,
+         *  then captures, longest chains first, then the other moves in
+         *  the order of Board.getMoves.  Since this order does not depend
+         *  on the killers and histories, which vary from thread to thread,
+         *  searches with any number of threads choose the same move from
+         *  among moves of equal value. */
+        MoveSource rootMoves(Board board) {
+            MoveSource source = moveSource(0);
+            source.start(board, _previousMove, null, null);
+            return source;
+        }
 
+        /** Return my MoveSource for PLY plies from the root. */
+        private MoveSource moveSource(int ply) {
+            if (ply >= _moveSources.length) {
+                int n = _moveSources.length;
+                _moveSources = Arrays.copyOf(_moveSources, 2 * ply + 1);
+                for (int i = n; i < _moveSources.length; i += 1) {
+                    _moveSources[i] = new MoveSource();
                 }
             }
+            return _moveSources[ply];
         }
-        return best;
-    }
 
-    /** Return a heuristic value for BOARD. FIXed. */
-    private int staticScore(Board board) {
-        int w = 0, b = 0;
-        for (PieceColor s: board.positions()) {
-            if (s.equals(WHITE)) {
-                w++;
+        /** Return the killer moves for PLY plies from the root. */
+        private long[] killers(int ply) {
+            if (ply >= _killers.length) {
+                int n = _killers.length;
+                _killers = Arrays.copyOf(_killers, 2 * ply + 1);
+                for (int i = n; i < _killers.length; i += 1) {
+                    _killers[i] = new long[2];
+                }
             }
-            if (s.equals(BLACK)) {
-                b++;
+            return _killers[ply];
+        }
+
+        /** Record that the packed move MOV, the Ith move tried at PLY plies
+         *  from the root with DEPTH levels remaining, caused a cutoff. */
+        private void recordCutoff(long mov, int i, int depth, int ply) {
+            _cutoffs += 1;
+            if (i == 0) {
+                _firstMoveCutoffs += 1;
+            }
+            if (packedJumpCount(mov) > 0) {
+                return;
+            }
+            long[] killers = killers(ply);
+            if (killers[0] != mov) {
+                killers[1] = killers[0];
+                killers[0] = mov;
+            }
+            int[] history = _history[packedFrom(mov)];
+            int to = packedTo(mov);
+            history[to] = Math.min(history[to] + depth * depth, MAX_HISTORY);
+        }
+
+        /** Return true iff the current search must stop, because it has
+         *  been stopped or its time budget is exhausted.  The stop flag
+         *  is checked at every node, which bounds the time taken to
+         *  respond to stop.  The clock is only consulted every
+         *  CLOCK_INTERVAL calls, and the first iteration is never stopped
+         *  for lack of time. */
+        private boolean timeUp() {
+            _nodes += 1;
+            if (!_timeUp
+                && (_stop || _ponderStop
+                    || (_nodes % CLOCK_INTERVAL == 0
+                        && System.currentTimeMillis() >= _deadline
+                        && _completedDepth > 0))) {
+                _timeUp = true;
             }
+            return _timeUp;
         }
-        return w - b;
+
+        /** Find a move from position BOARD and return its value to the
+         *  player to move (negamax), recording the move found in
+         *  _lastFoundMove iff SAVEMOVE.  The move should have maximal
+         *  value, or value >= BETA, in which case the search stops early.
+         *  A value <= ALPHA only bounds the true value from above.
+         *  Searches up to DEPTH levels, using principal variation search:
+         *  the first move is searched with the window ALPHA .. BETA, and
+         *  the others with null windows (see searchMove).  Searching at
+         *  level 0 only follows pending captures (see quiescence) and
+         *  does not set _lastMoveFound.  BOARD is restored to its
+         *  original position on return.  Transposition table entries,
+         *  including those left by earlier searches, cut the search off
+         *  only if searched to exactly DEPTH, so that the result is the
+         *  value to DEPTH whatever order positions are visited in (which
+         *  varies in parallel searches).  Deeper entries still supply the
+         *  first move to try.  FIXed. */
+        private int findMove(Board board, int depth, boolean saveMove,
+                             int alpha, int beta) {
+            if (timeUp()) {
+                return 0;
+            }
+            int ply = _rootDepth - depth;
+            if (!saveMove && _tablebase != null) {
+                int entry = _tablebase.probe(board);
+                if (entry != Tablebase.UNKNOWN) {
+                    return tablebaseValue(entry, ply);
+                }
+            }
+            if (depth == 0 || board.gameOver()) {
+                return quiescence(board, ply, alpha, beta);
+            }
+
+            int alpha0 = alpha;
+            long entry = _table.probe(board.key());
+            long hashMove = _table.move(board.key());
+            if (entry != 0 && !saveMove
+                && TranspositionTable.depth(entry) == depth) {
+                int value = searchValue(TranspositionTable.score(entry), ply);
+                switch (TranspositionTable.bound(entry)) {
+                case EXACT:
+                    return value;
+                case LOWER:
+                    alpha = Integer.max(alpha, value);
+                    break;
+                default:
+                    beta = Integer.min(beta, value);
+                    break;
+                }
+                if (beta <= alpha) {
+                    return value;
+                }
+            }
+
+            int best = -INFTY;
+            long bestMove = 0;
+            MoveSource moves = saveMove ? rootMoves(board)
+                : moves(board, hashMove, ply);
+            long M;
+            for (int i = 0; (M = moves.next()) != 0; i += 1) {
+                int value = searchMove(board, M, depth, alpha, beta, i == 0);
+                if (_timeUp) {
+                    return 0;
+                }
+                if (value > best) {
+                    best = value;
+                    bestMove = M;
+                    if (saveMove) {
+                        _lastFoundMove = M;
+                        if (value > alpha) {
+                            _provenMove = M;
+                        }
+                    }
+                    alpha = Integer.max(alpha, value);
+                }
+                if (beta <= alpha) {
+                    recordCutoff(M, i, depth, ply);
+                    break;
+                }
+            }
+
+            int stored = tableValue(best, ply);
+            if (best <= alpha0) {
+                _table.store(board.key(), depth, UPPER, stored, bestMove);
+            } else if (best >= beta) {
+                _table.store(board.key(), depth, LOWER, stored, bestMove);
+            } else {
+                _table.store(board.key(), depth, EXACT, stored, bestMove);
+            }
+            return best;
+        }
+
+        /** Return the value of BOARD to the player to move, PLY plies from
+         *  the root, extending the search along capture sequences until
+         *  the player to move has no capture, and then taking the static
+         *  score ("standing pat").  Captures are compulsory, so a player
+         *  that can capture may not stand pat, and no non-capturing move
+         *  is ever searched here.  ALPHA and BETA bound the window of
+         *  interest as for findMove. */
+        private int quiescence(Board board, int ply, int alpha, int beta) {
+            if (timeUp()) {
+                return 0;
+            }
+            if (board.gameOver()) {
+                return lossValue(ply);
+            }
+            if (!board.jumpPossible()) {
+                return staticScore(board);
+            }
+
+            int best = -INFTY;
+            MoveSource moves = moves(board, 0, ply);
+            for (long M = moves.next(); M != 0; M = moves.next()) {
+                board.makeTrialMove(M);
+                int value = -quiescence(board, ply + 1, -beta, -alpha);
+                board.undoTrialMove();
+                if (_timeUp) {
+                    return 0;
+                }
+                best = Integer.max(best, value);
+                alpha = Integer.max(alpha, value);
+                if (beta <= alpha) {
+                    break;
+                }
+            }
+            return best;
+        }
+
+        /** My private copy of the board. */
+        private Board _board;
+
+        /** _killers[P] holds the two most recent non-capturing packed moves
+         *  that caused cutoffs at P plies from the root (see killers). */
+        private long[][] _killers = new long[0][];
+
+        /** _moveSources[P] produces the moves at P plies from the root (see
+         *  moves). */
+        private MoveSource[] _moveSources = new MoveSource[0];
+
+        /** The moves at the root, for parallelFindMove. */
+        private final MoveBuffer _rootMoves = new MoveBuffer();
+
+        /** _history[F][T] is a score for non-capturing moves from square F to
+         *  square T, increased each time such a move causes a cutoff. */
+        private final int[][] _history =
+            new int[Move.MAX_INDEX + 1][Move.MAX_INDEX + 1];
+
+        /** Number of cutoffs in the current search, and the number of those
+         *  caused by the first move tried. */
+        private long _cutoffs, _firstMoveCutoffs;
+
+        /** Number of nodes visited by the current search. */
+        private long _nodes;
+    }
+
+    /** Depth of the current iteration. */
+    private int _rootDepth;
+
+    /** Ordering score of the hash move. */
+    private static final int HASH_MOVE_SCORE = 1 << 30;
+    /** Ordering score of a single capture; longer chains score higher. */
+    private static final int CAPTURE_SCORE = 1 << 20;
+    /** Ordering score of the second killer move; the first scores one
+     *  more. */
+    private static final int KILLER_SCORE = 1 << 19;
+    /** Limit on history scores, which keeps them below KILLER_SCORE. */
+    private static final int MAX_HISTORY = KILLER_SCORE - 1;
+
+    /** Time (as from System.currentTimeMillis) by which the current
+     *  search should finish. */
+    private long _deadline;
+
+    /** True iff the current search has run out of time. */
+    private volatile boolean _timeUp;
+
+    /** True iff myMove is running.  Guarded by this AI's lock, as are
+     *  the changes to _stop, _ponderStop, and _ponderer. */
+    private boolean _choosingMove;
+
+    /** True iff stop has been called during the current call to myMove,
+     *  which clears it on return. */
+    private volatile boolean _stop;
+
+    /** True iff the search started by ponder should stop. */
+    private volatile boolean _ponderStop;
+
+    /** The thread searching on my opponent's time, or null if none. */
+    private Thread _ponderer;
+
+    /** Depth of the last completed iteration of the current search. */
+    private int _completedDepth;
+
+    /** Searches, one per thread. */
+    private final Search[] _searches;
+
+    /** Pool of threads for parallel searches. */
+    private static ForkJoinPool _pool;
+
+    /** Results of earlier searches. */
+    private final TranspositionTable _table;
+
+    /** Endgame tablebase, or null if none. */
+    private final Tablebase _tablebase;
+
+    /** Return a heuristic value for BOARD, from the point of view of
+     *  the player to move. FIXed. */
+    private int staticScore(Board board) {
+        return board.whoseMove() == WHITE ? board.score() : -board.score();
     }
 
 }
@@ -0,0 +1,256 @@
+package qirkat;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests of the AI class.
+ *  @author Yingying Chen
+ */
+public class AITest {
+
+    private static final String[] POSITIONS = {
+        "wwwww wwwww bb-ww bbbbb bbbbb",
+        "w---w -b-b- ----- -b-b- -----",
+        "ww-w- -w-ww --b-- b-bb- b--bb",
+        "-w--- ww-w- b---- -bb-b ---b-",
+        "----- --w-- -w-b- --b-- -----",
+    };
+
+    /** Positions whose values change by more than AI.ASPIRATION_WINDOW
+     *  from one depth to the next, so that aspiration windows fail high
+     *  or low. */
+    private static final String[] UNSTABLE_POSITIONS = {
+        "www-w w---w b---b ---wb -bbb-",
+        "ww--w w--w- -wwww -b--- bb-bb",
+        "--w-w -b-ww b---w bb--- -bbbw",
+    };
+
+    private static Game newGame(Board board) {
+        return new Game(board, new ReaderSource(new StringReader(""), false),
+                        new TextReporter());
+    }
+
+    @Test
+    public void testTableAging() {
+        TranspositionTable table =
+            new TranspositionTable(0, TranspositionTable.Replacement.DEPTH);
+        assertEquals(1, table.size());
+        table.store(1, 5, TranspositionTable.Bound.EXACT, 10, 0);
+        table.store(2, 2, TranspositionTable.Bound.LOWER, 20, 0);
+        assertEquals(0, table.probe(2));
+        assertEquals(10, TranspositionTable.score(table.probe(1)));
+        table.newSearch();
+        assertEquals(10, TranspositionTable.score(table.probe(1)));
+        table.store(2, 2, TranspositionTable.Bound.LOWER, 20, 0);
+        assertEquals(0, table.probe(1));
+        long entry = table.probe(2);
+        assertEquals(20, TranspositionTable.score(entry));
+        assertEquals(TranspositionTable.Bound.LOWER,
+                     TranspositionTable.bound(entry));
+        assertEquals(2, TranspositionTable.depth(entry));
+    }
+
+    @Test(timeout = 10000)
+    public void testPonder() throws InterruptedException {
+        Board b = new Board();
+        Game game = newGame(b);
+        AI ai = new AI(game, PieceColor.BLACK, 1);
+        ai.ponder();
+        Thread.sleep(100);
+        b.makeMove(b.getMoves().get(0));
+        Move mov = ai.myMove();
+        assertNotNull(mov);
+        assertTrue(b.legalMove(mov));
+        ai.ponder();
+        ai.clear();
+    }
+
+    @Test(timeout = 10000)
+    public void testStop() throws InterruptedException {
+        for (int threads = 1; threads <= 4; threads += 3) {
+            Board b = new Board();
+            Game game = newGame(b);
+            game.doTime(new String[] { "60000" });
+            AI ai = new AI(game, PieceColor.WHITE, threads);
+            Move[] result = new Move[1];
+            Thread searcher = new Thread(() -> result[0] = ai.myMove());
+            searcher.start();
+            Thread.sleep(200);
+            ai.stop();
+            searcher.join();
+            assertNotNull(result[0]);
+            assertTrue(b.legalMove(result[0]));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testStopOutsideMove() throws InterruptedException {
+        Board b = new Board();
+        Move reply = b.getMoves().get(0);
+        Board after = new Board(b);
+        after.makeMove(reply);
+        AI reference = new AI(newGame(after), PieceColor.BLACK, 1);
+        Move expected = reference.myMove();
+        assertNotEquals(0, reference.value());
+
+        AI ai = new AI(newGame(b), PieceColor.BLACK, 1);
+        ai.stop();
+        ai.ponder();
+        Thread.sleep(100);
+        ai.stop();
+        b.makeMove(reply);
+        assertEquals(expected, ai.myMove());
+        assertEquals(reference.value(), ai.value());
+    }
+
+    @Test
+    public void testQuiescence() {
+        Board b = new Board();
+        b.setPieces("----- --w-- ----- --b-- -----", PieceColor.WHITE);
+        Move greedy = null;
+        int greedyScore = Integer.MIN_VALUE;
+        for (Move mov : b.getMoves()) {
+            b.makeMove(mov);
+            if (b.score() > greedyScore) {
+                greedy = mov;
+                greedyScore = b.score();
+            }
+            b.undo();
+        }
+        assertEquals(Move.parseMove("c2-c3"), greedy);
+        b.makeMove(greedy);
+        assertTrue(b.jumpPossible());
+        b.undo();
+
+        AI ai = new AI(newGame(b), PieceColor.WHITE, 1);
+        Move mov = ai.searchTo(1);
+        assertTrue(b.legalMove(mov));
+        assertNotEquals(greedy, mov);
+        assertTrue(ai.value() > -Board.PIECE_VALUE);
+    }
+
+    /** Return the value of BOARD, PLY plies from the root, to the player
+     *  to move, found by plain minimax to DEPTH without pruning, followed
+     *  by captures only, with the AI's evaluation. */
+    private static int minimax(Board board, int depth, int ply) {
+        if (board.gameOver()) {
+            return -(Integer.MAX_VALUE - 1 - ply);
+        } else if (depth == 0 && !board.jumpPossible()) {
+            return board.whoseMove() == PieceColor.WHITE ? board.score()
+                : -board.score();
+        }
+        int best = Integer.MIN_VALUE;
+        for (Move mov : board.getMoves()) {
+            board.makeTrialMove(mov);
+            best = Math.max(best, -minimax(board, Math.max(0, depth - 1),
+                                           ply + 1));
+            board.undoTrialMove();
+        }
+        return best;
+    }
+
+    @Test
+    public void testSearchMatchesMinimax() {
+        boolean reSearched = false;
+        ArrayList<String> positions = new ArrayList<>();
+        positions.addAll(Arrays.asList(POSITIONS));
+        positions.addAll(Arrays.asList(UNSTABLE_POSITIONS));
+        for (String pos : positions) {
+            for (PieceColor who : new PieceColor[] { PieceColor.WHITE,
+                                                     PieceColor.BLACK }) {
+                Board b = new Board();
+                b.setPieces(pos, who);
+                if (b.gameOver()) {
+                    continue;
+                }
+                int previous = 0;
+                for (int depth = 1; depth <= 4; depth += 1) {
+                    AI ai = new AI(newGame(b), who, 1);
+                    Move mov = ai.searchTo(depth);
+                    int value = minimax(b, depth, 0);
+                    String msg = pos + " " + who + " " + depth;
+                    assertEquals(msg, value, ai.value());
+                    b.makeTrialMove(mov);
+                    assertEquals(msg, value, -minimax(b, depth - 1, 1));
+                    b.undoTrialMove();
+                    if (depth > 1 && Math.abs(previous) < Integer.MAX_VALUE / 2
+                        && Math.abs(value - previous)
+                           >= AI.ASPIRATION_WINDOW) {
+                        reSearched = true;
+                    }
+                    previous = value;
+                }
+            }
+        }
+        assertTrue(reSearched);
+    }
+
+    @Test
+    public void testTablebaseMatchesSearch() throws IOException {
+        File file = File.createTempFile("qirkat", ".tb");
+        file.deleteOnExit();
+        Tablebase.generate(2, file.getPath(), 1);
+        Tablebase tablebase = Tablebase.open(file.getPath());
+        Random random = new Random(0);
+        int compared = 0;
+        for (int t = 0; t < 200; t += 1) {
+            int white = 0, black = 0;
+            while (Integer.bitCount(white | black) < 3) {
+                int k = Board.bit(random.nextInt(25));
+                if (((white | black) & k) == 0) {
+                    if (random.nextBoolean()) {
+                        white |= k;
+                    } else {
+                        black |= k;
+                    }
+                }
+            }
+            PieceColor who = random.nextBoolean() ? PieceColor.WHITE
+                : PieceColor.BLACK;
+            Board b = new Board();
+            b.setPosition(white, black, 0, 0, who);
+            if (b.gameOver()) {
+                continue;
+            }
+            AI plain = new AI(newGame(b), who, 1, null);
+            plain.searchTo(4);
+            int plies = Integer.MAX_VALUE - 1 - Math.abs(plain.value());
+            if (plies <= 4) {
+                AI endgame = new AI(newGame(b), who, 1, tablebase);
+                endgame.searchTo(4);
+                assertEquals(b.toString(), plain.value(), endgame.value());
+                compared += 1;
+            }
+        }
+        assertTrue(compared > 0);
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        for (String pos : POSITIONS) {
+            for (PieceColor who : new PieceColor[] { PieceColor.WHITE,
+                                                     PieceColor.BLACK }) {
+                Board b = new Board();
+                b.setPieces(pos, who);
+                Game game = newGame(b);
+                AI sequential = new AI(game, who, 1),
+                    parallel = new AI(game, who, 4);
+                Move sequentialMove = sequential.myMove(),
+                    parallelMove = parallel.myMove();
+                assertNotNull(pos, sequentialMove);
+                assertEquals(pos + " " + who, sequentialMove, parallelMove);
+                assertEquals(pos + " " + who, sequential.value(),
+                             parallel.value());
+            }
+        }
+    }
+
+}
@@ -3,7 +3,9 @@ package qirkat;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
+import java.util.Random;
 import static qirkat.PieceColor.*;
 import static qirkat.Move.*;
 
@@ -39,7 +41,6 @@ class Board extends Observable {
      *  positions. FIXed. */
     void clear() {
         _whoseMove = WHITE;
-        _gameOver = false;
 
         String initial = " w w w w w\n  w w w w w\n  "
                 + "b b - w w\n  b b b b b\n  b b b b b";
@@ -58,13 +59,16 @@ class Board extends Observable {
     /** Copy B into me. FIXed. */
     private void internalCopy(Board b) {
         _whoseMove = b.whoseMove();
-        _positions = new PieceColor[b.positions().length];
-        _directions = new int[b.directions().length];
-        _oldpost = new MoveList();
-        System.arraycopy(b.positions(), 0, _positions, 0, b.positions().length);
-        System.arraycopy(b.directions(), 0,
-                _directions, 0, b.directions().length);
-        _oldpost.addAll(b.oldpost());
+        _whitePieces = b._whitePieces;
+        _blackPieces = b._blackPieces;
+        _leftMoved = b._leftMoved;
+        _rightMoved = b._rightMoved;
+        _key = b._key;
+        _score = b._score;
+        _moveHistory = b._moveHistory.clone();
+        _keyHistory = b._keyHistory.clone();
+        _savedDirections = b._savedDirections.clone();
+        _historySize = b._historySize;
     }
 
     /** Set my contents as defined by STR.  STR consists of 25 characters,
@@ -83,34 +87,62 @@ class Board extends Observable {
             throw new IllegalArgumentException("bad board description");
         }
 
-        _positions = new PieceColor[MAX_INDEX + 1];
-        _directions = new int[MAX_INDEX + 1];
-        _whoseMove = nextMove;
-        _oldpost = new MoveList();
-
+        int white, black;
+        white = black = 0;
         for (int k = 0; k < str.length(); k += 1) {
             switch (str.charAt(k)) {
-            case '-':
-                set(k, EMPTY);
-                break;
             case 'b': case 'B':
-                set(k, BLACK);
+                black |= bit(k);
                 break;
             case 'w': case 'W':
-                set(k, WHITE);
+                white |= bit(k);
                 break;
             default:
                 break;
             }
         }
+        _moveHistory = new long[INITIAL_HISTORY];
+        _keyHistory = new long[INITIAL_HISTORY];
+        _savedDirections = new int[2 * INITIAL_HISTORY];
+        setPosition(white, black, 0, 0, nextMove);
         setChanged();
         notifyObservers();
     }
 
+    /** Set my contents to the pieces given by the bit masks WHITE and
+     *  BLACK (bit K standing for the square with linearized index K),
+     *  with the horizontal-move restrictions given by the masks
+     *  LEFTMOVED and RIGHTMOVED (see leftMoved and rightMoved), and with
+     *  NEXTMOVE to move, and clear my move history.  Unlike setPieces,
+     *  this does not notify observers, and so is cheap enough for
+     *  examining many positions in turn. */
+    void setPosition(int white, int black, int leftMoved, int rightMoved,
+                     PieceColor nextMove) {
+        _whitePieces = _blackPieces = 0;
+        _leftMoved = leftMoved;
+        _rightMoved = rightMoved;
+        _whoseMove = nextMove;
+        _key = nextMove == BLACK ? BLACK_TO_MOVE_KEY : 0;
+        _score = 0;
+        _historySize = 0;
+        for (int p = white; p != 0; p &= p - 1) {
+            set(Integer.numberOfTrailingZeros(p), WHITE);
+        }
+        for (int p = black; p != 0; p &= p - 1) {
+            set(Integer.numberOfTrailingZeros(p), BLACK);
+        }
+        for (int d = leftMoved; d != 0; d &= d - 1) {
+            _key ^= LEFT_MOVED_KEYS[Integer.numberOfTrailingZeros(d)];
+        }
+        for (int d = rightMoved; d != 0; d &= d - 1) {
+            _key ^= RIGHT_MOVED_KEYS[Integer.numberOfTrailingZeros(d)];
+        }
+    }
+
     /** Return true iff the game is over: i.e., if the current player has
      *  no moves. */
     boolean gameOver() {
-        return _gameOver;
+        return !isMove();
     }
 
     /** Return the current contents of square C R, where 'a' <= C <= 'e',
@@ -124,7 +156,51 @@ class Board extends Observable {
      * FIXed. */
     PieceColor get(int k) {
         assert validSquare(k);
-        return _positions[k];
+        if ((_whitePieces & bit(k)) != 0) {
+            return WHITE;
+        } else if ((_blackPieces & bit(k)) != 0) {
+            return BLACK;
+        } else {
+            return EMPTY;
+        }
+    }
+
+    /** Return the bit mask of the squares occupied by pieces of color C
+     *  (0 for EMPTY). Bit K stands for the square with linearized
+     *  index K. */
+    int pieces(PieceColor c) {
+        switch (c) {
+        case WHITE:
+            return _whitePieces;
+        case BLACK:
+            return _blackPieces;
+        default:
+            return 0;
+        }
+    }
+
+    /** Return the bit mask of the pieces whose last move was a
+     *  horizontal move to the left, and which so may not next move
+     *  right. */
+    int leftMoved() {
+        return _leftMoved;
+    }
+
+    /** Return the bit mask of the pieces whose last move was a
+     *  horizontal move to the right, and which so may not next move
+     *  left. */
+    int rightMoved() {
+        return _rightMoved;
+    }
+
+    /** Return the bit mask of all occupied squares. */
+    int occupied() {
+        return _whitePieces | _blackPieces;
+    }
+
+    /** Return the number of pieces of color C on the board. */
+    int pieceCount(PieceColor c) {
+        return Integer.bitCount(pieces(c));
     }
 
     /** Set get(C, R) to V, where 'a' <= C <= 'e', and
@@ -137,7 +213,22 @@ class Board extends Observable {
     /** Set get(K) to V, where K is the linearized index of a square. FIXed. */
     private void set(int k, PieceColor v) {
         assert validSquare(k);
-        _positions[k] = v;
+        PieceColor old = get(k);
+        _key ^= PIECE_KEYS[old.ordinal()][k] ^ PIECE_KEYS[v.ordinal()][k];
+        _score += PIECE_SCORES[v.ordinal()][k]
+            - PIECE_SCORES[old.ordinal()][k];
+        _whitePieces &= ~bit(k);
+        _blackPieces &= ~bit(k);
+        if (v == WHITE) {
+            _whitePieces |= bit(k);
+        } else if (v == BLACK) {
+            _blackPieces |= bit(k);
+        }
+    }
+
+    /** Return the bit mask for the square with linearized index K. */
+    static int bit(int k) {
+        return 1 << k;
     }
 
     /** Return true iff MOV is legal on the current board.
@@ -150,31 +241,33 @@ class Board extends Observable {
         int b = mov.toIndex();
 
         if (!validSquare(a) || !validSquare(b)
-                || get(b) != EMPTY || get(a) != whoseMove()) {
+                || (occupied() & bit(b)) != 0
+                || (pieces(whoseMove()) & bit(a)) == 0) {
             return false;
         }
 
         if (mov.isJump()) {
-            if (get(a).opposite() != get(mov.jumpedIndex())) {
+            if ((pieces(whoseMove().opposite())
+                 & bit(mov.jumpedIndex())) == 0) {
                 return false;
             }
         } else {
             if (mov.isLeftMove() || mov.isRightMove()) {
-                if ((mov.isLeftMove() && _directions[a] == 1)
-                        || (mov.isRightMove() && _directions[a] == -1)) {
+                if ((mov.isLeftMove() && (_rightMoved & bit(a)) != 0)
+                        || (mov.isRightMove() && (_leftMoved & bit(a)) != 0)) {
                     return false;
                 }
 
-                if ((get(a) == WHITE && mov.row0() == '5')
-                        || (get(a) == BLACK && mov.row0() == '1')) {
+                if ((whoseMove() == WHITE && mov.row0() == '5')
+                        || (whoseMove() == BLACK && mov.row0() == '1')) {
                     return false;
                 }
             } else {
                 if (mov.jumpTail() != null) {
                     return false;
                 }
-                if ((get(a) == WHITE && a >= b)
-                        || (get(a) == BLACK && a <= b)) {
+                if ((whoseMove() == WHITE && a >= b)
+                        || (whoseMove() == BLACK && a <= b)) {
                     return false;
                 }
             }
@@ -191,81 +284,138 @@ class Board extends Observable {
 
     /** Add all legal moves from the current position to MOVES. */
     void getMoves(ArrayList<Move> moves) {
-        if (gameOver()) {
-            return;
+        MoveBuffer packed = new MoveBuffer();
+        getMoves(packed);
+        for (int i = 0; i < packed.size(); i += 1) {
+            moves.add(unpack(packed.get(i)));
         }
+    }
 
-        if (jumpPossible()) {
-            for (int k = 0; k <= MAX_INDEX; k += 1) {
-                if (positions()[k].equals(whoseMove())) {
-                    getJumps(moves, k);
-                }
+    /** Set MOVES to all legal moves from the current position, as packed
+     *  moves (see Move.pack), in the same order as getMoves(). */
+    void getMoves(MoveBuffer moves) {
+        getCaptures(moves);
+        if (moves.isEmpty()) {
+            getQuietMoves(moves);
+        }
+    }
+
+    /** Set MOVES to all capturing moves from the current position, as
+     *  packed moves.  Since capturing is compulsory, these are all the
+     *  legal moves unless there are none. */
+    void getCaptures(MoveBuffer moves) {
+        moves.clear();
+        for (int p = capturingPieces(); p != 0; p &= p - 1) {
+            int k = Integer.numberOfTrailingZeros(p);
+            getJumps(moves, packStep(k, k), occupied() & ~bit(k),
+                     pieces(whoseMove().opposite()));
+        }
+    }
+
+    /** Set MOVES to all non-capturing moves from the current position, as
+     *  packed moves.  These are the legal moves if getCaptures finds
+     *  none. */
+    void getQuietMoves(MoveBuffer moves) {
+        moves.clear();
+        for (int p = pieces(whoseMove()); p != 0; p &= p - 1) {
+            getMoves(moves, Integer.numberOfTrailingZeros(p));
+        }
+    }
+
+    /** Return true iff the packed move MOV, which must have been
+     *  generated by getMoves for some position, is legal in the current
+     *  one. */
+    boolean isLegal(long mov) {
+        int from = packedFrom(mov), to = packedTo(mov),
+            jumps = packedJumpCount(mov);
+        if ((pieces(whoseMove()) & bit(from)) == 0) {
+            return false;
+        } else if (jumps == 0) {
+            return !jumpPossible() && legalStep(from, to);
+        }
+        int occupied = occupied() & ~bit(from),
+            opponents = pieces(whoseMove().opposite());
+        int k = from;
+        for (int i = 0; i < jumps; i += 1) {
+            int jumped = k + jumpOffset(mov, i);
+            k = jumped + jumpOffset(mov, i);
+            if ((opponents & bit(jumped)) == 0
+                || (occupied & bit(k)) != 0) {
+                return false;
             }
-        } else {
-            for (int k = 0; k <= MAX_INDEX; k += 1) {
-                getMoves(moves, k);
+            occupied &= ~bit(jumped);
+            opponents &= ~bit(jumped);
+        }
+        int[] targets = JUMP_TARGETS[k], jumped = JUMPED_SQUARES[k];
+        for (int i = 0; i < targets.length; i += 1) {
+            if ((occupied & bit(targets[i])) == 0
+                && (opponents & bit(jumped[i])) != 0) {
+                return false;
             }
         }
+        return true;
     }
 
     /** Add all legal non-capturing moves from the position
-     *  with linearized index K to MOVES. FIXed. */
-    private void getMoves(ArrayList<Move> moves, int k) {
-        int[][] tmp;
-
-        if (k % 2 == 0) {
-            tmp = new int[][] {new int[] {1, 0}, new int[] {1, 1},
-                new int[] {0, 1}, new int[] {-1, 1}, new int[] {-1, 0},
-                new int[] {-1, -1}, new int[] {0, -1}, new int[] {1, -1}};
-        } else {
-            tmp = new int[][] {new int[] {1, 0}, new int[] {0, 1},
-                new int[] {-1, 0}, new int[] {0, -1}};
-        }
-        for (int[] i: tmp) {
-            Move next = move(col(k), row(k),
-                    (char) (col(k) + i[0]), (char) (row(k) + i[1]));
-            if (legalMove(next)) {
-                moves.add(next);
+     *  with linearized index K, which holds a piece of the player to
+     *  move, to MOVES. FIXed. */
+    private void getMoves(MoveBuffer moves, int k) {
+        int[] targets = STEP_TARGETS[k];
+        for (int i = 0; i < targets.length; i += 1) {
+            if (legalStep(k, targets[i])) {
+                moves.add(STEPS[k][i]);
             }
         }
     }
 
-    /** Add all legal captures from the position with linearized index K
-     *  to MOVES. FIXed. */
-    private void getJumps(ArrayList<Move> moves, int k) {
-        int[][] tmp;
+    /** Return the linearized indices of the squares adjacent to the
+     *  square with linearized index K.  The result must not be
+     *  modified. */
+    static int[] neighbors(int k) {
+        return STEP_TARGETS[k];
+    }
 
-        if (k % 2 == 0) {
-            tmp = new int[][] {new int[] {2, 0}, new int[] {2, 2},
-                new int[] {0, 2}, new int[] {-2, 2}, new int[] {-2, 0},
-                new int[] {-2, -2}, new int[] {0, -2}, new int[] {2, -2}};
-        } else {
-            tmp = new int[][] {new int[] {2, 0}, new int[] {0, 2},
-                new int[] {-2, 0}, new int[] {0, -2}};
+    /** Return true iff the player on move may move the piece at linearized
+     *  index K to the adjacent square at linearized index T without
+     *  capturing. */
+    private boolean legalStep(int k, int t) {
+        if ((occupied() & bit(t)) != 0) {
+            return false;
         }
-
-        for (int[] i: tmp) {
-            Move next = move(col(k), row(k),
-                    (char) (col(k) + i[0]), (char) (row(k) + i[1]));
-            Board b = new Board(this);
-
-            if (b.checkJump(next, true)) {
-
-                b.makeMove(next);
-                b.revertWhoseMove();
-
-                ArrayList<Move> result = new ArrayList<>();
-                b.getJumps(result, next.toIndex());
-
-                if (result.isEmpty()) {
-                    moves.add(next);
-                } else {
-                    for (Move move: result) {
-                        moves.add(move(next, move));
-                    }
-                }
-
+        if (t / SIDE == k / SIDE) {
+            if ((t < k && (_rightMoved & bit(k)) != 0)
+                    || (t > k && (_leftMoved & bit(k)) != 0)) {
+                return false;
+            }
+            return whoseMove() == WHITE ? k < MAX_INDEX - SIDE + 1
+                : k >= SIDE;
+        }
+        return whoseMove() == WHITE ? t > k : t < k;
+    }
+
+    /** Add to MOVES all complete capture sequences that extend PACKED,
+     *  a packed vestigial move or partial capture sequence.  OCCUPIED and
+     *  OPPONENTS are the masks of occupied squares (not counting the
+     *  capturing piece) and of the capturable pieces that remain after
+     *  PACKED.  The search proceeds depth-first on these masks, so that
+     *  the board itself is never changed or copied. */
+    private void getJumps(MoveBuffer moves, long packed, int occupied,
+                          int opponents) {
+        int k = packedTo(packed);
+        int[] targets = JUMP_TARGETS[k], jumped = JUMPED_SQUARES[k];
+        boolean extended = false;
+        for (int i = 0; i < targets.length; i += 1) {
+            if ((occupied & bit(targets[i])) != 0
+                    || (opponents & bit(jumped[i])) == 0) {
+                continue;
             }
+            extended = true;
+            getJumps(moves, packJump(packed, targets[i]),
+                     occupied & ~bit(jumped[i]),
+                     opponents & ~bit(jumped[i]));
+        }
+        if (!extended && packedJumpCount(packed) > 0) {
+            moves.add(packed);
         }
     }
 
@@ -291,22 +441,27 @@ class Board extends Observable {
     /** Return true iff a jump is possible for a piece at position with
      *  linearized index K. FIXed. */
     boolean jumpPossible(int k) {
-        if (!positions()[k].equals(whoseMove())) {
-            return false;
-        }
-        ArrayList<Move> temp = new ArrayList<>();
-        getJumps(temp, k);
-        return !(temp.size() == 0);
+        return (capturingPieces() & bit(k)) != 0;
     }
 
     /** Return true iff a jump is possible from the current board. */
     boolean jumpPossible() {
-        for (int k = 0; k <= MAX_INDEX; k += 1) {
-            if (jumpPossible(k)) {
-                return true;
-            }
+        return capturingPieces() != 0;
+    }
+
+    /** Return the mask of the current player's pieces that can capture.
+     *  For each direction, the empty squares are shifted back onto
+     *  opposing pieces that could be jumped into them, and those are
+     *  shifted back again onto the squares from which such a jump
+     *  starts. */
+    private int capturingPieces() {
+        int empty = ~occupied() & ALL_SQUARES,
+            opponents = pieces(whoseMove().opposite());
+        int result = 0;
+        for (int offset : JUMP_OFFSETS) {
+            result |= shift(shift(empty, -offset) & opponents, -offset);
         }
-        return false;
+        return result & pieces(whoseMove());
     }
 
     /** Return the color of the player who has the next move.  The
@@ -331,68 +486,120 @@ class Board extends Observable {
      * FIXed. */
     void makeMove(Move mov) {
         assert legalMove(mov);
+        makeTrialMove(mov);
+        setChanged();
+        notifyObservers();
+    }
 
-        _oldpost.add(mov);
-        set(mov.fromIndex(), EMPTY);
-        set(mov.toIndex(), whoseMove());
-        _directions[mov.fromIndex()] = 0;
-        _directions[mov.toIndex()] = 0;
-
-        if (mov.isJump()) {
-            set(mov.jumpedIndex(), EMPTY);
-        } else if (mov.isRightMove()) {
-            _directions[mov.toIndex()] = 1;
-        } else if (mov.isLeftMove()) {
-            _directions[mov.toIndex()] = -1;
-        }
-
-        while (mov.jumpTail() != null) {
-            mov = mov.jumpTail();
-            set(mov.fromIndex(), EMPTY);
-            set(mov.toIndex(), whoseMove());
-            if (mov.isJump()) {
-                set(mov.jumpedIndex(), EMPTY);
-            }
+    /** Make the Move MOV on this Board, assuming it is legal, without
+     *  notifying observers.  This is the fast path for searches, which
+     *  take the move back with undoTrialMove. */
+    void makeTrialMove(Move mov) {
+        makeTrialMove(pack(mov));
+    }
+
+    /** Make the packed move MOV (see Move.pack), as for
+     *  makeTrialMove(Move).  A capture clears the horizontal-move
+     *  restrictions of the captured pieces and of the capturing piece,
+     *  which is unrestricted wherever its last leg lands. */
+    void makeTrialMove(long mov) {
+        pushHistory(mov);
+        int from = packedFrom(mov), to = packedTo(mov),
+            jumps = packedJumpCount(mov);
+        PieceColor mover = whoseMove();
+        set(from, EMPTY);
+        clearDirection(from);
+        for (int i = 0, k = from; i < jumps; i += 1) {
+            int offset = jumpOffset(mov, i);
+            set(k + offset, EMPTY);
+            clearDirection(k + offset);
+            k += 2 * offset;
+        }
+        set(to, mover);
+        clearDirection(to);
+
+        if (jumps == 0 && to == from + 1) {
+            _rightMoved |= bit(to);
+            _key ^= RIGHT_MOVED_KEYS[to];
+        } else if (jumps == 0 && to == from - 1) {
+            _leftMoved |= bit(to);
+            _key ^= LEFT_MOVED_KEYS[to];
         }
 
-        _whoseMove = whoseMove().opposite();
-        setChanged();
-        notifyObservers();
+        revertWhoseMove();
+    }
+
+    /** Remove any horizontal-move restriction on the square with
+     *  linearized index K. */
+    private void clearDirection(int k) {
+        if ((_leftMoved & bit(k)) != 0) {
+            _leftMoved &= ~bit(k);
+            _key ^= LEFT_MOVED_KEYS[k];
+        }
+        if ((_rightMoved & bit(k)) != 0) {
+            _rightMoved &= ~bit(k);
+            _key ^= RIGHT_MOVED_KEYS[k];
+        }
     }
 
     /** Undo the last move, if any.
      * FIXed. */
     void undo() {
-        if (_oldpost.isEmpty()) {
+        if (_historySize == 0) {
             throw new IllegalArgumentException("no previous step");
-        } else {
-            Move prev = _oldpost.get(_oldpost.size() - 1);
-            _whoseMove = whoseMove().opposite();
-            if (prev.isJump()) {
-                undoJumps(prev);
-            } else {
-                set(prev.fromIndex(), whoseMove());
-                set(prev.toIndex(), EMPTY);
-            }
-            _oldpost.remove(_oldpost.size() - 1);
         }
+        undoTrialMove();
         setChanged();
         notifyObservers();
     }
 
-    /** Undo sequential jumps.
-     * @param jump a sequential jump to be undone. */
-    private void undoJumps(Move jump) {
-        if (jump.jumpTail() == null) {
-            set(jump.fromIndex(), whoseMove());
-            set(jump.jumpedIndex(), whoseMove().opposite());
-            set(jump.toIndex(), EMPTY);
-        } else {
-            undoJumps(jump.jumpTail());
-            set(jump.fromIndex(), whoseMove());
-            set(jump.jumpedIndex(), whoseMove().opposite());
-            set(jump.toIndex(), EMPTY);
+    /** Undo the last move, which must exist, without notifying observers,
+     *  restoring all captured pieces and horizontal-move restrictions. */
+    void undoTrialMove() {
+        _historySize -= 1;
+        long mov = _moveHistory[_historySize];
+        revertWhoseMove();
+        int from = packedFrom(mov), jumps = packedJumpCount(mov);
+        set(packedTo(mov), EMPTY);
+        for (int i = 0, k = from; i < jumps; i += 1) {
+            int offset = jumpOffset(mov, i);
+            set(k + offset, whoseMove().opposite());
+            k += 2 * offset;
+        }
+        set(from, whoseMove());
+        restoreDirections();
+    }
+
+    /** Push the packed move MOV, and the key and horizontal-move
+     *  restrictions of the position before it, onto my history. */
+    private void pushHistory(long mov) {
+        int n = _historySize;
+        if (n == _moveHistory.length) {
+            _moveHistory = Arrays.copyOf(_moveHistory, 2 * n + 1);
+            _keyHistory = Arrays.copyOf(_keyHistory, 2 * n + 1);
+            _savedDirections = Arrays.copyOf(_savedDirections, 4 * n + 2);
+        }
+        _moveHistory[n] = mov;
+        _keyHistory[n] = _key;
+        _savedDirections[2 * n] = _leftMoved;
+        _savedDirections[2 * n + 1] = _rightMoved;
+        _historySize += 1;
+    }
+
+    /** Restore the horizontal-move restrictions in effect before the
+     *  move at the top of the history was made.  Assumes that move has
+     *  just been popped from the history. */
+    private void restoreDirections() {
+        int n = 2 * _historySize;
+        for (int d = _leftMoved ^ _savedDirections[n]; d != 0; d &= d - 1) {
+            _key ^= LEFT_MOVED_KEYS[Integer.numberOfTrailingZeros(d)];
         }
+        for (int d = _rightMoved ^ _savedDirections[n + 1]; d != 0;
+             d &= d - 1) {
+            _key ^= RIGHT_MOVED_KEYS[Integer.numberOfTrailingZeros(d)];
+        }
+        _leftMoved = _savedDirections[n];
+        _rightMoved = _savedDirections[n + 1];
     }
 
     @Override
@@ -400,21 +607,64 @@ class Board extends Observable {
         return toString(false);
     }
 
-    /** Tentative override method for test purposes.
-     * public boolean equals(Object o) {
-        if (o instanceof Board) {
-            Board b = (Board) o;
-            return (this.toString().equals(b.toString())
-                    && _whoseMove == b.whoseMove()
-                    && _oldpost.toString().equals(b.oldpost().toString()));
-        } else {
+    /** Boards are equal if they have the same pieces, player to move,
+     *  and horizontal-move restrictions.  The move history is not
+     *  compared. */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Board)) {
             return false;
         }
-    }*/
+        Board b = (Board) o;
+        return _key == b._key
+            && _whitePieces == b._whitePieces
+            && _blackPieces == b._blackPieces
+            && _leftMoved == b._leftMoved && _rightMoved == b._rightMoved
+            && _whoseMove == b._whoseMove;
+    }
 
     @Override
     public int hashCode() {
-        return super.hashCode();
+        return (int) (_key ^ (_key >>> 32));
+    }
+
+    /** Return the number of times the current position has occurred
+     *  before in my history.  Only positions since the last irreversible
+     *  move (a capture or a non-horizontal step) are examined, since no
+     *  earlier one can recur. */
+    int repetitions() {
+        int count = 0;
+        for (int n = _historySize - 1; n >= 0; n -= 1) {
+            long mov = _moveHistory[n];
+            int from = packedFrom(mov), to = packedTo(mov);
+            if (packedJumpCount(mov) > 0 || from / SIDE != to / SIDE) {
+                break;
+            }
+            if (_keyHistory[n] == _key) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return a heuristic value of this position: positive if it favors
+     *  White, negative if it favors Black.  It is the sum of the values
+     *  of the pieces on their squares (see PIECE_SCORES), less a penalty
+     *  for each piece whose horizontal moves are restricted.  The piece
+     *  values are maintained incrementally as moves are made and undone,
+     *  so this takes constant time. */
+    int score() {
+        int restricted = _leftMoved | _rightMoved;
+        return _score - RESTRICTION_PENALTY
+            * (Integer.bitCount(restricted & _whitePieces)
+               - Integer.bitCount(restricted & _blackPieces));
+    }
+
+    /** Return the 64-bit Zobrist key of this position, which covers the
+     *  pieces, the player to move, and the horizontal-move restrictions.
+     *  It is maintained incrementally as moves are made and undone. */
+    long key() {
+        return _key;
     }
 
     /** Return a text depiction of the board.  If LEGEND, supply row and
@@ -442,14 +692,36 @@ class Board extends Observable {
     /** Return true iff there is a move for the current player.
      * FIXed. */
     public boolean isMove() {
-        for (int k = 0; k <= MAX_INDEX; k++) {
-            for (int j = 0; j <= MAX_INDEX; j++) {
-                if (legalMove(move(col(k), row(k), col(j), row(j)))) {
-                    return true;
-                }
-            }
+        return stepPossible() || jumpPossible();
+    }
+
+    /** Return true iff the current player has a non-capturing move.  For
+     *  each direction, the player's pieces that have a neighbor in that
+     *  direction and may move that way are shifted onto their
+     *  neighbors, and the result is compared with the empty squares. */
+    private boolean stepPossible() {
+        int empty = ~occupied() & ALL_SQUARES;
+        int forward, sideways;
+        if (whoseMove() == WHITE) {
+            forward = shift(_whitePieces, SIDE - 1) | shift(_whitePieces, SIDE)
+                | shift(_whitePieces, SIDE + 1);
+            sideways = _whitePieces & ~ROW_MASKS[SIDE - 1];
+        } else {
+            forward = shift(_blackPieces, -SIDE + 1)
+                | shift(_blackPieces, -SIDE) | shift(_blackPieces, -SIDE - 1);
+            sideways = _blackPieces & ~ROW_MASKS[0];
         }
-        return false;
+        return (forward & empty) != 0
+            || (shift(sideways & ~_leftMoved, 1) & empty) != 0
+            || (shift(sideways & ~_rightMoved, -1) & empty) != 0;
+    }
+
+    /** Return the mask of squares reached by moving each piece in MASK by
+     *  OFFSET (a difference in linearized index between neighbors), in
+     *  the cases where that is a step along a line of the board. */
+    private static int shift(int mask, int offset) {
+        mask &= STEP_SOURCES[offset + SIDE + 1];
+        return offset > 0 ? mask << offset : mask >>> -offset;
     }
 
     /** Player that is on move. */
@@ -458,44 +730,192 @@ class Board extends Observable {
     /** Set _whosemove back to my move. */
     public void revertWhoseMove() {
         _whoseMove = _whoseMove.opposite();
+        _key ^= BLACK_TO_MOVE_KEY;
+    }
+
+    /** Column and row offsets of the neighbors of a square with even
+     *  linearized index, which lies on both diagonals, in the order the
+     *  move generator visits them. */
+    private static final int[][] EVEN_DIRECTIONS = {
+        {1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}
+    };
+
+    /** Column and row offsets of the neighbors of a square with odd
+     *  linearized index, which is only connected orthogonally. */
+    private static final int[][] ODD_DIRECTIONS = {
+        {1, 0}, {0, 1}, {-1, 0}, {0, -1}
+    };
+
+    /** STEP_TARGETS[K] lists the linearized indices of the squares
+     *  adjacent to square K, and STEPS[K][I] is the packed move from K to
+     *  STEP_TARGETS[K][I]. */
+    private static final int[][] STEP_TARGETS = new int[MAX_INDEX + 1][];
+    /** See STEP_TARGETS. */
+    private static final long[][] STEPS = new long[MAX_INDEX + 1][];
+
+    /** STEP_SOURCES[D + SIDE + 1] is the mask of squares K that have a
+     *  neighbor K + D along a line of the board. */
+    private static final int[] STEP_SOURCES = new int[2 * SIDE + 3];
+
+    /** The mask of all squares. */
+    private static final int ALL_SQUARES = (1 << (MAX_INDEX + 1)) - 1;
+
+    /** ROW_MASKS[R] is the mask of the squares in row R (numbering from
+     *  0). */
+    private static final int[] ROW_MASKS = new int[SIDE];
+
+    /** JUMP_TARGETS[K] lists the linearized indices of the squares two
+     *  steps away from square K in a straight line, and
+     *  JUMPED_SQUARES[K][I] is the square passed over in reaching
+     *  JUMP_TARGETS[K][I]. */
+    private static final int[][] JUMP_TARGETS = new int[MAX_INDEX + 1][];
+    /** See JUMP_TARGETS. */
+    private static final int[][] JUMPED_SQUARES = new int[MAX_INDEX + 1][];
+
+    static {
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            int[][] dirs = k % 2 == 0 ? EVEN_DIRECTIONS : ODD_DIRECTIONS;
+            ArrayList<Move> steps = new ArrayList<>(),
+                jumps = new ArrayList<>();
+            for (int[] d : dirs) {
+                char c1 = (char) (col(k) + d[0]), r1 = (char) (row(k) + d[1]),
+                    c2 = (char) (c1 + d[0]), r2 = (char) (r1 + d[1]);
+                if (validSquare(c1, r1)) {
+                    steps.add(move(col(k), row(k), c1, r1));
+                }
+                if (validSquare(c2, r2)) {
+                    jumps.add(move(col(k), row(k), c2, r2));
+                }
+            }
+            STEPS[k] = new long[steps.size()];
+            STEP_TARGETS[k] = new int[steps.size()];
+            JUMP_TARGETS[k] = new int[jumps.size()];
+            JUMPED_SQUARES[k] = new int[jumps.size()];
+            for (int i = 0; i < steps.size(); i += 1) {
+                STEPS[k][i] = pack(steps.get(i));
+                STEP_TARGETS[k][i] = steps.get(i).toIndex();
+                STEP_SOURCES[STEP_TARGETS[k][i] - k + SIDE + 1] |= bit(k);
+            }
+            ROW_MASKS[k / SIDE] |= bit(k);
+            for (int i = 0; i < jumps.size(); i += 1) {
+                JUMP_TARGETS[k][i] = jumps.get(i).toIndex();
+                JUMPED_SQUARES[k][i] = jumps.get(i).jumpedIndex();
+            }
+        }
     }
 
-    /** Set true when game ends. */
-    private boolean _gameOver;
+    /* Zobrist keys.  A position's key is the exclusive or of the keys of
+     * each (piece color, square) pair, of each square holding a piece with
+     * a horizontal-move restriction, and of BLACK_TO_MOVE_KEY if Black is
+     * to move.  Since xor is its own inverse, moves update it in a few
+     * operations.  The keys come from a fixed seed so that they are the
+     * same in every run. */
 
-    /** Convenience value giving values of pieces at each ordinal position. */
-    static final PieceColor[] PIECE_VALUES = PieceColor.values();
+    /** Seed for the Zobrist keys. */
+    private static final long ZOBRIST_SEED = 0x51524b4154L;
 
-    /** Create an array to store all positions.*/
-    private PieceColor[] _positions;
+    /** PIECE_KEYS[C.ordinal()][K] is the key for a piece of color C on
+     *  square K (0 for EMPTY). */
+    private static final long[][] PIECE_KEYS =
+        new long[PieceColor.values().length][MAX_INDEX + 1];
 
-    /** @return the _positions of the object. */
-    public PieceColor[] positions() {
-        return _positions;
-    }
+    /** Keys for squares whose pieces last moved left and right,
+     *  respectively. */
+    private static final long[] LEFT_MOVED_KEYS = new long[MAX_INDEX + 1],
+        RIGHT_MOVED_KEYS = new long[MAX_INDEX + 1];
 
-    /** Create an array to store all directions.*/
-    private int[] _directions;
+    /** Key for Black being on move. */
+    private static final long BLACK_TO_MOVE_KEY;
 
-    /** @return the _directions of the object. */
-    public int[] directions() {
-        return _directions;
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            PIECE_KEYS[WHITE.ordinal()][k] = keys.nextLong();
+            PIECE_KEYS[BLACK.ordinal()][k] = keys.nextLong();
+            LEFT_MOVED_KEYS[k] = keys.nextLong();
+            RIGHT_MOVED_KEYS[k] = keys.nextLong();
+        }
+        BLACK_TO_MOVE_KEY = keys.nextLong();
     }
 
-    /** Create a MoveList to store all passed moves.*/
-    private MoveList _oldpost;
+    /* Evaluation.  A piece is worth PIECE_VALUE plus a bonus that
+     * depends on its square.  Squares with even linearized indices lie
+     * on diagonals and so offer more moves and captures, and central
+     * squares more than edge squares.  A piece that reaches the far row
+     * can no longer move except to capture, and so is worth less. */
 
-    /** @return the old positions of the object. */
-    public MoveList oldpost() {
-        return _oldpost;
-    }
+    /** Value of a piece, apart from its square. */
+    static final int PIECE_VALUE = 100;
+
+    /** Bonus for a square on the diagonals. */
+    private static final int DIAGONAL_BONUS = 4;
+
+    /** Bonus for each step a square lies closer to the center than the
+     *  edge. */
+    private static final int CENTER_BONUS = 2;
 
+    /** Penalty for a square on the far row. */
+    private static final int FAR_ROW_PENALTY = 10;
 
-    /** One cannot create arrays of ArrayList<Move>, so we introduce
-     *  a specialized private list type for this purpose. */
-    private static class MoveList extends ArrayList<Move> {
+    /** Penalty for a piece with a horizontal-move restriction. */
+    private static final int RESTRICTION_PENALTY = 3;
+
+    /** PIECE_SCORES[C.ordinal()][K] is the contribution to score() of a
+     *  piece of color C on square K: positive for White, negative for
+     *  Black, and 0 for EMPTY. */
+    private static final int[][] PIECE_SCORES =
+        new int[PieceColor.values().length][MAX_INDEX + 1];
+
+    static {
+        for (int k = 0; k <= MAX_INDEX; k += 1) {
+            int c = k % SIDE, r = k / SIDE, mid = SIDE / 2;
+            int value = PIECE_VALUE
+                + (k % 2 == 0 ? DIAGONAL_BONUS : 0)
+                + CENTER_BONUS
+                * (mid - Math.max(Math.abs(c - mid), Math.abs(r - mid)))
+                - (r == SIDE - 1 ? FAR_ROW_PENALTY : 0);
+            PIECE_SCORES[WHITE.ordinal()][k] = value;
+            PIECE_SCORES[BLACK.ordinal()][MAX_INDEX - k] = -value;
+        }
     }
 
+    /** Convenience value giving values of pieces at each ordinal position. */
+    static final PieceColor[] PIECE_VALUES = PieceColor.values();
+
+    /** Bit masks of the squares occupied by white and by black pieces
+     *  (bit K is the square with linearized index K).  These also serve
+     *  as piece lists: move generation visits only their set bits. */
+    private int _whitePieces, _blackPieces;
+
+    /** Bit masks of the pieces whose last move was a horizontal move
+     *  to the left (which may not next move right) and to the right
+     *  (which may not next move left). */
+    private int _leftMoved, _rightMoved;
+
+    /** Zobrist key of the current position. */
+    private long _key;
+
+    /** Sum of PIECE_SCORES for the pieces on the board. */
+    private int _score;
+
+    /** The moves made on me, as packed moves, in
+     *  _moveHistory[0 .. _historySize-1]. */
+    private long[] _moveHistory;
+
+    /** The keys of the positions before each move in _moveHistory. */
+    private long[] _keyHistory;
+
+    /** The values of _leftMoved and _rightMoved before each move in
+     *  _moveHistory, stored in consecutive pairs. */
+    private int[] _savedDirections;
+
+    /** Number of moves in my history. */
+    private int _historySize;
+
+    /** Number of moves of history for which space is initially
+     *  reserved. */
+    private static final int INITIAL_HISTORY = 64;
+
     /** A read-only view of a Board. */
     private class ConstantBoard extends Board implements Observer {
         /** A constant view of this Board. */
@@ -514,17 +934,38 @@ class Board extends Observable {
             assert false;
         }
 
+        @Override
+        void setPosition(int white, int black, int leftMoved,
+                         int rightMoved, PieceColor nextMove) {
+            assert false;
+        }
+
         @Override
         void makeMove(Move move) {
             assert false;
         }
 
+        @Override
+        void makeTrialMove(Move move) {
+            assert false;
+        }
+
+        @Override
+        void makeTrialMove(long move) {
+            assert false;
+        }
+
         /** Undo the last move. */
         @Override
         void undo() {
             assert false;
         }
 
+        @Override
+        void undoTrialMove() {
+            assert false;
+        }
+
         @Override
         public void update(Observable obs, Object arg) {
             super.copy((Board) obs);
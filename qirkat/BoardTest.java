@@ -24,6 +24,63 @@ public class BoardTest {
     private static final String GAME1_BOARD =
         "  b b - b b\n  b - - b b\n  - - w w w\n  w - - w w\n  w w b w w";
 
+    /** Positions reached by playing out move sequences from the initial
+     *  board, paired with the moves the array-based board generated
+     *  for them.  Games in which a multi-jump ends on a square whose
+     *  last occupant was restricted are left out, since the rule there
+     *  changed deliberately (see testMultiJumpClearsRestrictions). */
+    private static final String[][] GAME_CORPUS = {
+        {"d2-c3 d4-d2 d1-d3 b4-d2-d4 b2-b4 a5-c3",
+         "[a1-b2, b1-b2, c1-d1, c1-d2, c1-b2, e1-d2, e1-d1, a2-b2, c2-d2, "
+         + "c2-b2, e2-d2, e3-d3]"},
+        {"d2-c3 d4-d2 d1-d3 b4-d2-d4 b2-b4 a5-c3 e3-d3 d4-d2-b2 b1-b3-d3 "
+         + "a4-b4 a2-a4 c4-c3 d3-b3",
+         "[b4-b2]"},
+        {"d2-c3 d4-d2 d1-d3 b4-d2-d4 b2-b4 a5-c3 e3-d3 d4-d2-b2 b1-b3-d3 "
+         + "a4-b4 a2-a4 c4-c3 d3-b3 b4-b2 c1-a3 c5-d4 a1-a2 d4-c3 a4-b4 "
+         + "c3-a5 a3-b4 b5-b3 a2-b2 b3-b1 e1-d1 e5-d4 d1-d2",
+         "[d4-c4, d4-c3, d4-d3, d4-e3, e4-e3, a5-b5, a5-a4, a5-b4, d5-e5, "
+         + "d5-c5]"},
+        {"d2-c3 d4-d2 d1-d3 b4-d2-d4 b2-b4 a5-c3 e3-d3 d4-d2-b2 b1-b3-d3 "
+         + "a4-b4 a2-a4 c4-c3 d3-b3 b4-b2 c1-a3 c5-d4 a1-a2 d4-c3 a4-b4 "
+         + "c3-a5 a3-b4 b5-b3 a2-b2 b3-b1 e1-d1 e5-d4 d1-d2 d4-d3 d2-d4 "
+         + "e4-c4 e2-e3 d5-d4 e3-c5-c3 a5-b5 c3-d3 b5-c5 d3-e3 c5-c4 "
+         + "e3-e4 c4-c3 e4-e5",
+         "[c3-d3, c3-b3, c3-b2, c3-c2, c3-d2]"},
+        {"d2-c3 d4-d2 d1-d3 b4-d2-d4 b2-b4 b5-b3 e2-d2 e4-e2 e1-e3 c5-b4 "
+         + "e3-c5-c3 b3-d3-d1 c1-e1 b4-c4 b1-b2 a3-c1-c3 e1-e2 d5-c5 a1-b1 "
+         + "e5-d4",
+         "[b1-c1, b1-b2, a2-b2, a2-a3, e2-e3, e2-d2]"},
+        {"d2-c3 d4-d2 d1-d3 b4-d2-d4 b2-b4 b5-b3 e2-d2 e4-e2 e1-e3 c5-b4 "
+         + "e3-c5-c3 b3-d3-d1 c1-e1 b4-c4 b1-b2 a3-c1-c3 e1-e2 d5-c5 a1-b1 "
+         + "e5-d4 e2-d2 c3-e1 b1-b2 a5-b5 b2-a3 a4-b4 a2-b2 d4-d3 b2-b3 "
+         + "b4-b2 a3-c1 c4-d4 c1-b1 b5-b4",
+         "[b1-b2, b1-a1]"},
+        {"c2-c3 c4-c2 c1-c3 a3-c1 c3-a3 d4-c3 d3-b3 b4-b2 a2-c2 a4-a2 a1-a3 "
+         + "c1-c3 d2-b4 a5-c3 d1-c1 c3-b2 b1-b3 b5-b4 b3-b5 c5-a5",
+         "[c1-d2, c1-c2, c1-b2, c1-b1, e1-d2, e1-d1, e2-d2, a3-b3, a3-b4, "
+         + "a3-a4, e3-d4, e3-d3]"},
+        {"b2-c3 d4-b2 a1-c3 a3-a1 c3-a3 a4-a2 b1-b2 a1-c3 d3-b3 b4-b2 "
+         + "c1-a3-a1 c5-b4 e3-d4",
+         "[d5-d3, e5-c3-c1-e3]"},
+        {"b2-c3 d4-b2 a1-c3 a3-a1 c3-a3 a4-a2 b1-b2 a1-c3 d3-b3 b4-b2 "
+         + "c1-a3-a1 c5-b4 e3-d4 d5-d3 d2-d4 e5-c3-c1 d1-b1 c4-c3 b1-c1 "
+         + "a5-a4 c1-c2 c3-c1 e1-d2 c1-e3-e1 a1-b2 b4-c4 b2-b3",
+         "[a4-b4, a4-a3, c4-d4, c4-c3, e4-d4, e4-e3, b5-c5, b5-a5, b5-b4]"},
+    };
+
+    /** Set-up positions (White to move), paired with the moves the
+     *  array-based board generated for them. */
+    private static final String[][] SETUP_CORPUS = {
+        {"----- -w--- -bbb- ----- -----", "[b2-d4-d2, b2-b4-d2-d4]"},
+        {"w---w -b-b- ----- -b-b- -----",
+         "[a1-c3-e5, a1-c3-a5, e1-c3-e5, e1-c3-a5]"},
+        {"--w-- -b-b- --w-- -b-b- -----",
+         "[c1-e3-c5-a3-c1, c1-a3-c5-e3-c1, c3-e5, c3-a5, c3-a1, c3-e1]"},
+        {"wwwww b-b-b ----- b-b-b -----",
+         "[a1-a3-a5, c1-c3-c5, e1-e3-e5]"},
+    };
+
     private static void makeMoves(Board b, String[] moves) {
         for (String s : moves) {
             b.makeMove(Move.parseMove(s));
@@ -60,6 +117,63 @@ public class BoardTest {
 
     }
 
+    @Test
+    public void testMoveCorpus() {
+        for (String[] entry : GAME_CORPUS) {
+            Board b0 = new Board();
+            makeMoves(b0, entry[0].split(" "));
+            assertEquals(entry[0], entry[1], b0.getMoves().toString());
+        }
+        for (String[] entry : SETUP_CORPUS) {
+            Board b0 = new Board();
+            b0.setPieces(entry[0], PieceColor.WHITE);
+            assertEquals(entry[0], entry[1], b0.getMoves().toString());
+        }
+    }
+
+    @Test
+    public void testMultiJumpClearsRestrictions() {
+        Board b0 = new Board();
+        makeMoves(b0, ("d2-c3 d4-d2 d1-d3 b4-d2-d4 b2-b4 a5-c3 e3-d3 "
+                       + "d4-d2-b2 b1-b3-d3 e4-d4").split(" "));
+        assertEquals(0, b0.leftMoved() & Board.bit(Move.index('d', '3')));
+        assertTrue(b0.getMoves().contains(Move.parseMove("d3-e3")));
+        assertTrue(b0.getMoves().contains(Move.parseMove("d3-c3")));
+        assertEquals(0, (b0.leftMoved() | b0.rightMoved())
+                     & ~b0.occupied());
+    }
+
+    /** Perft counts from the initial position for depths 0-8. */
+    private static final long[] INITIAL_PERFT = {
+        1, 4, 5, 6, 12, 27, 97, 416, 1826
+    };
+
+    @Test
+    public void testPerft() {
+        Board b0 = new Board();
+        for (int depth = 0; depth < INITIAL_PERFT.length; depth += 1) {
+            assertEquals(INITIAL_PERFT[depth], Perft.count(b0, depth));
+        }
+        assertEquals(INIT_BOARD, b0.toString());
+        long total = 0;
+        for (long n : Perft.divide(b0, INITIAL_PERFT.length - 1, 4)) {
+            total += n;
+        }
+        assertEquals(INITIAL_PERFT[INITIAL_PERFT.length - 1], total);
+    }
+
+    @Test
+    public void testCopy() {
+        Board b0 = new Board();
+        makeMoves(b0, GAME1);
+        Board b1 = new Board(b0);
+        assertEquals(b0.toString(), b1.toString());
+        assertEquals(b0.whoseMove(), b1.whoseMove());
+        assertEquals(b0.getMoves(), b1.getMoves());
+        b1.makeMove(b1.getMoves().get(0));
+        assertEquals(GAME1_BOARD, b0.toString());
+    }
+
     @Test
     public void testUndo() {
         Board b0 = new Board();
@@ -72,4 +186,216 @@ public class BoardTest {
         makeMoves(b0, GAME1);
     }
 
+    @Test
+    public void testUndoRestoresDirections() {
+        Board b0 = new Board();
+        b0.setPieces("----- ----- -w--- ----- ----b", PieceColor.WHITE);
+        makeMoves(b0, new String[] { "b3-c3", "e5-d5" });
+        assertFalse(b0.getMoves().contains(Move.parseMove("c3-b3")));
+        b0.makeMove(Move.parseMove("c3-c4"));
+        b0.undo();
+        assertFalse(b0.getMoves().contains(Move.parseMove("c3-b3")));
+        b0.undo();
+        b0.undo();
+        assertTrue(b0.getMoves().contains(Move.parseMove("b3-a3")));
+    }
+
+    @Test
+    public void testGameOver() {
+        Board b0 = new Board();
+        assertFalse(b0.gameOver());
+        b0.setPieces("----- ----- ----- ----- w---b", PieceColor.WHITE);
+        assertTrue(b0.gameOver());
+        b0.setPieces("----- ----- ----- ----- w---b", PieceColor.BLACK);
+        assertFalse(b0.gameOver());
+        b0.setPieces("bb--- ----- ----- ----- -----", PieceColor.BLACK);
+        assertTrue(b0.gameOver());
+        b0.setPieces("----- ----- ----- --b-- bbwbb", PieceColor.WHITE);
+        assertFalse(b0.gameOver());
+        b0.setPieces("----- ----- --b-- --b-- bbwbb", PieceColor.WHITE);
+        assertTrue(b0.gameOver());
+        for (String[] entry : GAME_CORPUS) {
+            b0 = new Board();
+            for (String mov : entry[0].split(" ")) {
+                assertEquals(b0.getMoves().isEmpty(), b0.gameOver());
+                b0.makeMove(Move.parseMove(mov));
+            }
+            assertEquals(b0.getMoves().isEmpty(), b0.gameOver());
+        }
+    }
+
+    @Test
+    public void testMoveSource() {
+        MoveSource source = new MoveSource();
+        MoveBuffer moves = new MoveBuffer();
+        int[][] history = new int[Move.MAX_INDEX + 1][Move.MAX_INDEX + 1];
+        for (String[] entry : GAME_CORPUS) {
+            Board b0 = new Board();
+            makeMoves(b0, entry[0].split(" "));
+            b0.getMoves(moves);
+            long last = moves.get(moves.size() - 1);
+            long[] killers = { Move.pack(Move.parseMove("a1-a2")), last };
+            source.start(b0, last, killers, history);
+            assertEquals(last, source.next());
+            for (int i = 0; i < moves.size() - 1; i += 1) {
+                assertEquals(moves.get(i), source.next());
+            }
+            assertEquals(0, source.next());
+        }
+    }
+
+    /** Return the moves produced by SOURCE until it is exhausted, as
+     *  unpacked moves. */
+    private static ArrayList<Move> drain(MoveSource source) {
+        ArrayList<Move> result = new ArrayList<>();
+        for (long mov = source.next(); mov != 0; mov = source.next()) {
+            result.add(Move.unpack(mov));
+        }
+        return result;
+    }
+
+    @Test
+    public void testMoveSourceStages() {
+        MoveSource source = new MoveSource();
+        int[][] history = new int[Move.MAX_INDEX + 1][Move.MAX_INDEX + 1];
+        Board b0 = new Board();
+        makeMoves(b0, GAME_CORPUS[0][0].split(" "));
+        ArrayList<Move> moves = b0.getMoves();
+        assertEquals(12, moves.size());
+        history[moves.get(9).fromIndex()][moves.get(9).toIndex()] = 10;
+        history[moves.get(1).fromIndex()][moves.get(1).toIndex()] = 5;
+        long[] killers = {
+            Move.pack(moves.get(7)), Move.pack(Move.parseMove("a1-a2")),
+            Move.pack(moves.get(5))
+        };
+        source.start(b0, Move.pack(moves.get(3)), killers, history);
+        ArrayList<Move> produced = drain(source);
+        ArrayList<Move> expected = new ArrayList<>();
+        for (int i : new int[] { 3, 7, 5, 9, 1, 0, 2, 4, 6, 8, 10, 11 }) {
+            expected.add(moves.get(i));
+        }
+        assertEquals(expected, produced);
+
+        b0.setPieces("--w-- -b-b- --w-- -b-b- -----", PieceColor.WHITE);
+        moves = b0.getMoves();
+        killers = new long[] { Move.pack(Move.parseMove("c3-c4")) };
+        source.start(b0, Move.pack(Move.parseMove("c3-a1")), killers,
+                     history);
+        assertEquals("[c3-a1, c1-e3-c5-a3-c1, c1-a3-c5-e3-c1, c3-e5, "
+                     + "c3-a5, c3-e1]", drain(source).toString());
+    }
+
+    @Test
+    public void testScore() {
+        Board b0 = new Board();
+        assertEquals(0, b0.score());
+        b0.setPieces("w---- ----- ----- ----- ----b", PieceColor.WHITE);
+        assertEquals(0, b0.score());
+        b0.setPieces("----- -w--- ----- ----- -----", PieceColor.WHITE);
+        assertEquals(106, b0.score());
+        b0.makeMove(Move.parseMove("b2-c2"));
+        assertEquals(99, b0.score());
+        b0.undo();
+        assertEquals(106, b0.score());
+        for (String[] entry : GAME_CORPUS) {
+            b0 = new Board();
+            makeMoves(b0, entry[0].split(" "));
+            int score = b0.score();
+            for (Move mov : b0.getMoves()) {
+                b0.makeTrialMove(mov);
+                b0.undoTrialMove();
+                assertEquals(score, b0.score());
+            }
+        }
+    }
+
+    @Test
+    public void testKeys() {
+        String setup = "w---w ----- ----- ----- b---b";
+        Board b0 = new Board(), b1 = new Board(), b2 = new Board();
+        b0.setPieces(setup, PieceColor.WHITE);
+        b1.setPieces(setup, PieceColor.WHITE);
+        makeMoves(b0, new String[] { "a1-a2", "a5-a4", "e1-e2", "e5-e4" });
+        makeMoves(b1, new String[] { "e1-e2", "e5-e4", "a1-a2", "a5-a4" });
+        assertEquals(b0.key(), b1.key());
+        assertEquals(b0, b1);
+        b2.setPieces("----- w---w ----- b---b -----", PieceColor.WHITE);
+        assertEquals(b0.key(), b2.key());
+        assertEquals(b0, b2);
+
+        b0.makeMove(Move.parseMove("a2-b2"));
+        b0.makeMove(Move.parseMove("a4-b4"));
+        b2.setPieces("----- -w--w ----- -b--b -----", PieceColor.WHITE);
+        assertEquals(b0.toString(), b2.toString());
+        assertNotEquals(b0.key(), b2.key());
+        assertNotEquals(b0, b2);
+
+        b0.undo();
+        b0.undo();
+        assertEquals(b1.key(), b0.key());
+        b2.setPieces("----- w---w ----- b---b -----", PieceColor.BLACK);
+        assertNotEquals(b1.key(), b2.key());
+    }
+
+    /** The moves of SHUFFLE: a white piece on c1 and a black piece on
+     *  c5 repeatedly move left and back.  Moving back after moving left
+     *  is illegal, so a position can only repeat in this way by using
+     *  makeTrialMove, which does not check legality. */
+    private static final long[] SHUFFLE_MOVES = {
+        Move.packStep(2, 1), Move.packStep(22, 21),
+        Move.packStep(1, 2), Move.packStep(21, 22),
+    };
+
+    /** Set B to a position with a white piece on c1 and a black piece on
+     *  c5, and make the first N moves of a sequence in which each piece
+     *  moves left and back in turn.  The position after move K occurs
+     *  again after moves K + 4, K + 8, .... */
+    static void shuffle(Board b, int n) {
+        b.setPosition(Board.bit(2), Board.bit(22), 0, 0, PieceColor.WHITE);
+        for (int i = 0; i < n; i += 1) {
+            b.makeTrialMove(SHUFFLE_MOVES[i % SHUFFLE_MOVES.length]);
+        }
+    }
+
+    @Test
+    public void testRepetitions() {
+        Board b = new Board();
+        assertEquals(0, b.repetitions());
+        int[] expected = { 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2 };
+        for (int n = 0; n < expected.length; n += 1) {
+            shuffle(b, n);
+            assertEquals("after " + n + " moves", expected[n],
+                         b.repetitions());
+        }
+        b.undoTrialMove();
+        assertEquals(1, b.repetitions());
+
+        shuffle(b, 10);
+        b.makeTrialMove(Move.packStep(1, 6));
+        b.makeTrialMove(Move.packStep(21, 22));
+        b.makeTrialMove(Move.packStep(6, 1));
+        b.makeTrialMove(Move.packStep(22, 21));
+        assertEquals("history scanned past a forward move", 0,
+                     b.repetitions());
+    }
+
+    @Test
+    public void testTrialMoves() {
+        for (String[] entry : SETUP_CORPUS) {
+            Board b0 = new Board();
+            b0.setPieces(entry[0], PieceColor.WHITE);
+            String before = b0.toString();
+            for (Move mov : b0.getMoves()) {
+                long key = b0.key();
+                b0.makeTrialMove(mov);
+                assertEquals(PieceColor.BLACK, b0.whoseMove());
+                assertNotEquals(key, b0.key());
+                b0.undoTrialMove();
+                assertEquals(before, b0.toString());
+                assertEquals(key, b0.key());
+                assertEquals(entry[1], b0.getMoves().toString());
+            }
+        }
+    }
+
 }
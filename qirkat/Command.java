@@ -19,13 +19,15 @@ class Command {
         AUTO("(?i)auto\\s+(white|black)"),
         MANUAL("(?i)manual\\s+(white|black)"),
         SEED("seed\\s+(\\d+)"),
+        TIME("time\\s+(\\d+)"),
         START,
         SETBOARD("(?i)set\\s+(white|black)\\s+((?:[bw-]\\s*){25})"),
         /* Regular moves (set-up or play) */
         PIECEMOVE("([a-e][1-5](?:-[a-e][1-5])+)"),
         /* Valid at any time. */
         LOAD("load\\s+(\\S+)"),
-        QUIT, CLEAR, DUMP, HELP,
+        PERFT("perft\\s+(\\d+)(?:\\s+(divide))?"),
+        QUIT, CLEAR, DUMP, HELP, STOP,
         /* Special "commands" internally generated. */
         /** Syntax error in command. */
         ERROR(".*"),
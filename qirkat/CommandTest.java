@@ -43,6 +43,21 @@ public class CommandTest {
         checkError("seed 142 foo");
     }
 
+    @Test public void testTIME() {
+        check("time 250", TIME, "250");
+        checkError("time");
+        checkError("time -5");
+        checkError("time 250 foo");
+    }
+
+    @Test public void testPERFT() {
+        check("perft 4", PERFT, "4", null);
+        check("perft 4 divide", PERFT, "4", "divide");
+        checkError("perft");
+        checkError("perft x");
+        checkError("perft 4 foo");
+    }
+
     @Test public void testSTART() {
         check("start", START);
         checkError("start foo");
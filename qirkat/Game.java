@@ -36,7 +36,6 @@ class Game {
     /** Run a session of Qirkat gaming.
      * Fixed. */
     void process() {
-        Player white, black;
         doClear(null);
 
         while (true) {
@@ -44,27 +43,27 @@ class Game {
                 doCommand();
             }
 
-            while (_state != SETUP && _board.isMove()) {
+            while (_state != SETUP && !_board.gameOver() && !drawn()) {
                 if (_board.whoseMove().equals(WHITE) && !_whiteIsManual) {
-                    white = new AI(this, WHITE);
-                    Move nm = white.myMove();
+                    Move nm = player(WHITE).myMove();
 
                     if (nm == null) {
                         break;
                     }
                     _board.makeMove(nm);
                     reportMove("White moves %s." , nm.toString());
+                    ponder(WHITE);
 
                 } else if (_board.whoseMove().equals(BLACK)
                         && !_blackIsManual) {
-                    black = new AI(this, BLACK);
-                    Move nm = black.myMove();
+                    Move nm = player(BLACK).myMove();
 
                     if (nm == null) {
                         break;
                     }
                     _board.makeMove(nm);
                     reportMove("Black moves %s." , nm.toString());
+                    ponder(BLACK);
 
                 } else {
                     Command cmnd = getMoveCmnd(_board.whoseMove() + "moves:");
@@ -74,6 +73,7 @@ class Game {
                 }
             }
 
+            stopPondering();
             if (_state == PLAYING) {
                 reportWinner();
                 doClear(null);
@@ -218,10 +218,28 @@ class Game {
         }
     }
 
+    /** Perform the command 'stop'. */
+    void doStop(String[] unused) {
+        stop();
+    }
+
+    /** Stop the searches my AIs are making, either for their own moves,
+     *  which are then chosen from the work already done, or on their
+     *  opponents' time (see AI.stop).  May be called from any thread,
+     *  for example by a display whose user wants a move at once. */
+    void stop() {
+        for (AI player : new AI[] { _whitePlayer, _blackPlayer }) {
+            if (player != null) {
+                player.stop();
+            }
+        }
+    }
+
     /** Perform the command 'clear'.
      * FIXed. */
     void doClear(String[] unused) {
         _board.clear();
+        clearPlayers();
         _state = SETUP;
         _whiteIsManual = true;
         _blackIsManual = false;
@@ -236,6 +254,56 @@ class Game {
         } else {
             _board.setPieces(operands[1], WHITE);
         }
+        clearPlayers();
+    }
+
+    /** Return the AI that plays COLOR, creating it if this is the first
+     *  time it has been needed.  Each AI is kept for the rest of the
+     *  session, so that what its searches learn carries over from move
+     *  to move. */
+    private AI player(PieceColor color) {
+        if (color == WHITE) {
+            if (_whitePlayer == null) {
+                _whitePlayer = new AI(this, WHITE);
+            }
+            return _whitePlayer;
+        } else {
+            if (_blackPlayer == null) {
+                _blackPlayer = new AI(this, BLACK);
+            }
+            return _blackPlayer;
+        }
+    }
+
+    /** If pondering is enabled, start the AI playing COLOR, which has
+     *  just moved, searching while its opponent, a manual player,
+     *  decides on a reply. */
+    private void ponder(PieceColor color) {
+        boolean opponentIsManual =
+            color == WHITE ? _blackIsManual : _whiteIsManual;
+        if (Main.ponder() && opponentIsManual && !_board.gameOver()
+            && !drawn()) {
+            player(color).ponder();
+        }
+    }
+
+    /** Stop any searches my AIs are making on their opponents' time. */
+    private void stopPondering() {
+        for (AI player : new AI[] { _whitePlayer, _blackPlayer }) {
+            if (player != null) {
+                player.stopPondering();
+            }
+        }
+    }
+
+    /** Make my AIs forget the results of their earlier searches, which
+     *  belong to a different game. */
+    private void clearPlayers() {
+        for (AI player : new AI[] { _whitePlayer, _blackPlayer }) {
+            if (player != null) {
+                player.clear();
+            }
+        }
     }
 
     /** Perform the command 'dump'.
@@ -255,16 +323,60 @@ class Game {
         }
     }
 
+    /** Execute 'time OPERANDS[0]', setting the number of milliseconds
+     *  an AI may spend searching for each move.  0 means that AIs search
+     *  to a fixed depth instead. */
+    void doTime(String[] operands) {
+        try {
+            _moveTime = Integer.parseInt(operands[0]);
+        } catch (NumberFormatException e) {
+            throw error("Time limit too large: %s", operands[0]);
+        }
+    }
+
+    /** Return the time budget for an AI move in milliseconds, or 0 if
+     *  there is none. */
+    int moveTime() {
+        return _moveTime;
+    }
+
+    /** Execute 'perft OPERANDS[0] [divide]', reporting the number of
+     *  move sequences of length OPERANDS[0] from the current position
+     *  and the time taken, broken down by first move if OPERANDS[1] is
+     *  "divide". */
+    void doPerft(String[] operands) {
+        int depth;
+        try {
+            depth = Integer.parseInt(operands[0]);
+        } catch (NumberFormatException e) {
+            throw error("Depth too large: %s", operands[0]);
+        }
+        _reporter.outcomeMsg("%s", Perft.report(_board, depth,
+                                                operands[1] != null,
+                                                Main.threads()));
+    }
+
     /** Execute the artificial 'error' command. */
     void doError(String[] unused) {
         throw error("Command not understood");
     }
 
+    /** Return true iff the current position has occurred
+     *  REPETITIONS_TO_DRAW times in the current game, which is then
+     *  drawn. */
+    boolean drawn() {
+        return _board.repetitions() >= REPETITIONS_TO_DRAW - 1;
+    }
+
     /** Report the outcome of the current game.
      * FIXed. */
     void reportWinner() {
         String msg;
-        msg =  _board.whoseMove().opposite().toString() +  " wins.";
+        if (drawn()) {
+            msg = "Draw.";
+        } else {
+            msg =  _board.whoseMove().opposite().toString() +  " wins.";
+        }
         _reporter.outcomeMsg(msg);
     }
 
@@ -280,9 +392,12 @@ class Game {
         _commands.put(MANUAL, this::doManual);
         _commands.put(PIECEMOVE, this::doMove);
         _commands.put(SEED, this::doSeed);
+        _commands.put(TIME, this::doTime);
         _commands.put(SETBOARD, this::doSet);
         _commands.put(START, this::doStart);
         _commands.put(LOAD, this::doLoad);
+        _commands.put(PERFT, this::doPerft);
+        _commands.put(STOP, this::doStop);
         _commands.put(QUIT, this::doQuit);
         _commands.put(ERROR, this::doError);
         _commands.put(EOF, this::doQuit);
@@ -291,14 +406,22 @@ class Game {
     /** Input source. */
     private final CommandSources _inputs = new CommandSources();
 
+    /** Number of occurrences of a position that draws the game. */
+    static final int REPETITIONS_TO_DRAW = 3;
+
     /** My board and its read-only view. */
     private Board _board, _constBoard;
     /** Indicate which players are manual players (as opposed to AIs). */
     private boolean _whiteIsManual, _blackIsManual;
+    /** The AIs playing each color, once they have been needed.  These
+     *  are volatile for the sake of stop. */
+    private volatile AI _whitePlayer, _blackPlayer;
     /** Current game state. */
     private State _state;
     /** Used to send messages to the user. */
     private Reporter _reporter;
+    /** Time budget for each AI move (milliseconds), or 0 for none. */
+    private int _moveTime;
     /** Source of pseudo-random numbers (used by AIs). */
     private Random _randoms = new Random();
 }
@@ -0,0 +1,42 @@
+package qirkat;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/** Tests of the Game class.
+ *  @author Yingying Chen
+ */
+public class GameTest {
+
+    /** Outcome messages reported by the game under test. */
+    private final StringBuilder _outcomes = new StringBuilder();
+
+    /** Return a new Game playing on BOARD, with no input, that records
+     *  its outcome messages in _outcomes. */
+    private Game newGame(Board board) {
+        return new Game(board, new ReaderSource(new StringReader(""), false),
+                        new TextReporter() {
+                            @Override
+                            public void outcomeMsg(String format,
+                                                   Object... args) {
+                                _outcomes.append(String.format(format, args));
+                            }
+                        });
+    }
+
+    @Test
+    public void testDrawByRepetition() {
+        Board b = new Board();
+        Game game = newGame(b);
+        BoardTest.shuffle(b, 9);
+        assertFalse(game.drawn());
+        BoardTest.shuffle(b, 10);
+        assertTrue(game.drawn());
+        game.reportWinner();
+        assertEquals("Draw.", _outcomes.toString());
+    }
+
+}
@@ -5,12 +5,15 @@ import java.io.IOException;
 import java.io.PipedReader;
 import java.io.PipedWriter;
 
+import qirkat.TranspositionTable.Replacement;
+
 /** The main program for Qirkat.
  *  @author P. N. Hilfinger */
 public class Main {
 
     /** Run Qirkat game.  Use display if ARGS[k] is '--display', timing
-     *  if ARGS[k] is "--timing". */
+     *  if ARGS[k] is "--timing".  ARGS[k] may also set search options
+     *  (see searchOption). */
     public static void main(String[] args) {
         boolean useGUI;
         System.out.println("CS61B Qirkat! Version 2.0");
@@ -25,7 +28,9 @@ public class Main {
                 _timing = true;
                 break;
             default:
-                usage();
+                if (!searchOption(args[i])) {
+                    usage();
+                }
                 break;
             }
         }
@@ -62,11 +67,80 @@ public class Main {
 
     /** Give usage message and exit. */
     static void usage() {
-        System.err.println("Usage: java qirkat.Main [--display] [--timing]"
-                           + " [--strict]");
+        System.err.printf("Usage: java qirkat.Main [--display] [--timing]"
+                          + " [--strict] [--hash=MEGABYTES]"
+                          + " [--replace=always|depth] [--threads=N]"
+                          + " [--ponder] [--tablebase=FILE]"
+                          + "   (1 <= MEGABYTES <= %d)%n",
+                          TranspositionTable.MAX_MEGABYTES);
         System.exit(1);
     }
 
+    /** Set a search option from the command-line argument ARG, which has
+     *  the form --hash=MEGABYTES (memory budget of the AIs' transposition
+     *  tables, from 1 to TranspositionTable.MAX_MEGABYTES) or
+     *  --replace=POLICY (their replacement policy: always or depth), or
+     *  --threads=N (number of threads each AI searches with), or --ponder
+     *  (AIs search while their manual opponents think), or
+     *  --tablebase=FILE (endgame tablebase written by Tablebase).
+     *  Return false if ARG is not a valid search option. */
+    static boolean searchOption(String arg) {
+        try {
+            if (arg.equals("--ponder")) {
+                _ponder = true;
+                return true;
+            }
+            if (arg.startsWith("--threads=")) {
+                _threads = Integer.parseInt(arg.substring(10));
+                return _threads > 0;
+            }
+            if (arg.startsWith("--hash=")) {
+                _tableMegabytes = Integer.parseInt(arg.substring(7));
+                return _tableMegabytes > 0
+                    && _tableMegabytes <= TranspositionTable.MAX_MEGABYTES;
+            } else if (arg.startsWith("--replace=")) {
+                _replacement = Replacement.parse(arg.substring(10));
+                return true;
+            } else if (arg.startsWith("--tablebase=")) {
+                _tablebase = Tablebase.open(arg.substring(12));
+                return true;
+            }
+        } catch (IllegalArgumentException excp) {
+            /* Fall through to report a bad option. */
+        } catch (IOException excp) {
+            System.err.printf("Could not open tablebase: %s%n",
+                              excp.getMessage());
+        }
+        return false;
+    }
+
+    /** Return the memory budget of each transposition table (MB). */
+    static int tableMegabytes() {
+        return _tableMegabytes;
+    }
+
+    /** Return the number of threads each AI searches with. */
+    static int threads() {
+        return _threads;
+    }
+
+    /** Return true iff AIs should search while their manual opponents
+     *  think. */
+    static boolean ponder() {
+        return _ponder;
+    }
+
+    /** Return the endgame tablebase for the AIs to use, or null if
+     *  none. */
+    static Tablebase tablebase() {
+        return _tablebase;
+    }
+
+    /** Return the transposition tables' replacement policy. */
+    static Replacement replacement() {
+        return _replacement;
+    }
+
     /* TIMING */
 
     /** Start timing an operation. */
@@ -79,9 +153,15 @@ public class Main {
     /** End the timing started with the last call to startTiming().
      *  Report result if we are timing. */
     static void endTiming() {
+        endTiming("");
+    }
+
+    /** End the timing started with the last call to startTiming().
+     *  Report result, followed by DETAILS, if we are timing. */
+    static void endTiming(String details) {
         if (_timing) {
             long time = System.currentTimeMillis() - _startTime;
-            System.err.printf("[%d msec]%n", time);
+            System.err.printf("[%d msec%s]%n", time, details);
             _maxTime = Math.max(_maxTime, time);
             _totalTime += time;
             _numTimedOps += 1;
@@ -114,6 +194,21 @@ public class Main {
     /** Maximum operation time. */
     private static long _maxTime;
 
+    /** Memory budget for an AI's transposition table (megabytes). */
+    private static int _tableMegabytes = 16;
+
+    /** Number of threads each AI searches with. */
+    private static int _threads = 1;
+
+    /** True iff AIs search on their opponents' time. */
+    private static boolean _ponder;
+
+    /** Endgame tablebase, or null if none. */
+    private static Tablebase _tablebase;
+
+    /** Replacement policy for transposition tables. */
+    private static Replacement _replacement = Replacement.DEPTH;
+
     /** Size of the buffer for reading commands from a GUI (bytes). */
     private static final int BUFFER_LEN = 128;
 
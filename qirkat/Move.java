@@ -2,8 +2,7 @@ package qirkat;
 
 import static java.lang.Math.abs;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -39,60 +38,78 @@ class Move {
      * one. Moves themselves are immutable, and for any possible move,
      * there is exactly one object of type Move. */
 
-    /* To avoid creating Move objects that are not needed, we maintain a
-     * a static variable, _staged containing a Move object.  The move
-     * factory methods then sets the fields of this object before looking to
-     * to see if there is already a Move object with the same parameters.
-     * If there is, the move methods will simply return it, thus allowing
-     * _staged to be reused on the next call without having to create a
-     * new Move object.  Otherwise, we use the _staged object itself as the
-     * new Move, and set the variable to null so that we create a new
-     * Move on the next call to move. There is a drawback: since there
-     * is at most one _staged object at any time, at most one call to move
-     * may execute simultaneously.  Otherwise, two the methods may attempt
-     * to use the same Move object for two different Moves, which clearly
-     * will not work.  Therefore, we indicate in the comments that a number
-     * of the operations are not "thread safe". Fortunately, you'll not run
-     * into this problem as long as you don't do anything fancy (such as
-     * trying to make your AI a parallel program).
-     */
+    /* Every single move or jump between two squares (including the
+     * vestigial "moves" from a square to itself) is created in advance
+     * and kept in SINGLE_MOVES, indexed by its source and destination,
+     * so that producing one is a single array access.  A multi-jump
+     * consists of a first jump followed by the (unique) Move for the rest
+     * of the jump, whose source is the first jump's destination.  Each
+     * jump keeps an array of its extensions: the multi-jumps that
+     * consist of a jump from each square followed by it.  The factory
+     * fills in these arrays with compare-and-set operations, so that
+     * there is still exactly one Move object for each distinct move even
+     * when several threads create moves at once, without any locking. */
 
     /** The move constructor, made private to prevent its use except in
-     *  this class. */
-    private Move() {
+     *  this class.  Creates the move COL0 ROW0 - COL1 ROW1 - NEXTJUMP. */
+    private Move(char col0, char row0, char col1, char row1, Move nextJump) {
+        set(col0, row0, col1, row1, nextJump);
+        _extensions = _isJump ? new AtomicReferenceArray<>(MAX_INDEX + 1)
+            : null;
     }
 
     /** A factory method that returns a Move from COL0 ROW0 to COL1 ROW1,
      *  followed by NEXTJUMP, if this move is a jump. Assumes the column
      *  and row designations are valid and that NEXTJUMP is null for a
-     *  non-capturing move.  Not thread-safe. */
+     *  non-capturing move.  Thread-safe. */
     static Move move(char col0, char row0, char col1, char row1,
                      Move nextJump) {
-        if (_staged == null) {
-            _staged = new Move();
-        }
-
         if (!validSquare(col0, row0) || !validSquare(col1, row1)) {
             return  null;
         }
 
-        _staged.set(col0, row0, col1, row1, nextJump);
-        if (_staged.isJump() && nextJump != null && !nextJump.isJump()) {
-            throw new IllegalArgumentException("bad jump");
-        } else if (!_staged.isJump() && nextJump != null) {
+        return move(index(col0, row0), index(col1, row1), nextJump);
+    }
+
+    /** Return the Move from the square with linearized index FROM to the
+     *  one with linearized index TO, followed by NEXTJUMP, as for
+     *  move(COL0, ROW0, COL1, ROW1, NEXTJUMP).  Unless NEXTJUMP is null,
+     *  both it and FROM-TO must be jumps, and NEXTJUMP must start at TO,
+     *  since the result is recorded under FROM alone among the extensions
+     *  of NEXTJUMP.  Thread-safe. */
+    static Move move(int from, int to, Move nextJump) {
+        Move first = move(from, to);
+        if (nextJump == null) {
+            return first;
+        } else if (!first.isJump() || !nextJump.isJump()
+                   || to != nextJump.fromIndex()) {
             throw new IllegalArgumentException("bad jump");
         }
-        Move result = _internedMoves.computeIfAbsent(_staged, IDENTITY);
-        if (result == _staged) {
-            _staged = null;
+
+        AtomicReferenceArray<Move> extensions = nextJump._extensions;
+        Move result = extensions.get(from);
+        if (result == null) {
+            result = new Move(col(from), row(from), col(to), row(to),
+                              nextJump);
+            if (!extensions.compareAndSet(from, null, result)) {
+                result = extensions.get(from);
+            }
         }
         return result;
     }
 
-    /** Return a single move or jump from (COL0, ROW0) to (COL1, ROW1).
-     *  Not thread-safe. */
+    /** Return the single move or jump from the square with linearized
+     *  index FROM to the one with linearized index TO. */
+    static Move move(int from, int to) {
+        return SINGLE_MOVES[from * (MAX_INDEX + 1) + to];
+    }
+
+    /** Return a single move or jump from (COL0, ROW0) to (COL1, ROW1). */
     static Move move(char col0, char row0, char col1, char row1) {
-        return move(col0, row0, col1, row1, null);
+        if (!validSquare(col0, row0) || !validSquare(col1, row1)) {
+            return  null;
+        }
+        return move(index(col0, row0), index(col1, row1));
     }
 
     /** Return a vestigial Move consisting only of starting square
@@ -135,6 +152,119 @@ class Move {
         }
     }
 
+    /* Packed moves.  To avoid handling objects in its inner loops, the
+     * search represents a move as a long (a "packed move"), which it
+     * keeps in reusable MoveBuffers.  Bits 0-4 hold the linearized index
+     * of the source square, bits 5-9 that of the final destination, and
+     * bits 10-13 the number of jumps (0 for a non-capturing move).  For
+     * a jump, each following group of three bits gives the direction of
+     * one leg of the jump, in order, as an index into JUMP_OFFSETS.  No
+     * move packs to 0, which therefore denotes "no move". */
+
+    /** Return MOV (not null) as a packed move. */
+    static long pack(Move mov) {
+        if (!mov.isJump()) {
+            return packStep(mov.fromIndex(), mov.toIndex());
+        }
+        long packed = packStep(mov.fromIndex(), mov.fromIndex());
+        for (Move leg = mov; leg != null; leg = leg.jumpTail()) {
+            packed = packJump(packed, leg.toIndex());
+        }
+        return packed;
+    }
+
+    /** Return the packed non-capturing move from the square with
+     *  linearized index FROM to that with linearized index TO.  When FROM
+     *  and TO are equal, the result is a vestigial move that may be
+     *  extended with packJump. */
+    static long packStep(int from, int to) {
+        return from | (to << TO_SHIFT);
+    }
+
+    /** Return the packed move that consists of the vestigial move or jump
+     *  PACKED followed by a jump to the square with linearized index TO,
+     *  which must be two squares from PACKED's destination in a straight
+     *  line. */
+    static long packJump(long packed, int to) {
+        int n = packedJumpCount(packed);
+        long direction =
+            JUMP_DIRECTIONS[(to - packedTo(packed)) / 2 + MAX_OFFSET];
+        return (packed & ~((long) SQUARE_MASK << TO_SHIFT))
+            + (1 << COUNT_SHIFT) + (to << TO_SHIFT)
+            + (direction << (LEGS_SHIFT + LEG_BITS * n));
+    }
+
+    /** Return the Move denoted by the packed move PACKED. */
+    static Move unpack(long packed) {
+        int from = packedFrom(packed);
+        if (packedJumpCount(packed) == 0) {
+            return move(from, packedTo(packed));
+        }
+        return unpackJump(packed, from, 0);
+    }
+
+    /** Return the Move consisting of legs I and following of the packed
+     *  jump PACKED, where leg I starts at linearized index FROM. */
+    private static Move unpackJump(long packed, int from, int i) {
+        int to = from + 2 * jumpOffset(packed, i);
+        if (i == packedJumpCount(packed) - 1) {
+            return move(from, to);
+        }
+        return move(from, to, unpackJump(packed, to, i + 1));
+    }
+
+    /** Return the linearized index of the source square of packed move
+     *  PACKED. */
+    static int packedFrom(long packed) {
+        return (int) packed & SQUARE_MASK;
+    }
+
+    /** Return the linearized index of the final destination square of
+     *  packed move PACKED. */
+    static int packedTo(long packed) {
+        return (int) (packed >>> TO_SHIFT) & SQUARE_MASK;
+    }
+
+    /** Return the number of jumps in packed move PACKED. */
+    static int packedJumpCount(long packed) {
+        return (int) (packed >>> COUNT_SHIFT) & COUNT_MASK;
+    }
+
+    /** Return the difference between the linearized indices of the
+     *  jumped square and the source square of leg I (numbering from 0)
+     *  of the packed jump PACKED.  The leg ends at twice this distance
+     *  from its source. */
+    static int jumpOffset(long packed, int i) {
+        return JUMP_OFFSETS[(int) (packed >>> (LEGS_SHIFT + LEG_BITS * i))
+                            & LEG_MASK];
+    }
+
+    /** Layout of packed moves: shifts of the destination, jump count,
+     *  and legs fields, the width of each leg, and masks selecting a
+     *  square, a count, and a leg. */
+    private static final int TO_SHIFT = 5, COUNT_SHIFT = 10,
+        LEGS_SHIFT = 14, LEG_BITS = 3,
+        SQUARE_MASK = 0x1f, COUNT_MASK = 0xf, LEG_MASK = 0x7;
+
+    /** Differences in linearized index between adjacent squares in each
+     *  of the eight directions. */
+    static final int[] JUMP_OFFSETS = {
+        1, SIDE + 1, SIDE, SIDE - 1, -1, -SIDE - 1, -SIDE, -SIDE + 1
+    };
+
+    /** The largest magnitude in JUMP_OFFSETS. */
+    private static final int MAX_OFFSET = SIDE + 1;
+
+    /** JUMP_DIRECTIONS[D + MAX_OFFSET] is the index of D in
+     *  JUMP_OFFSETS. */
+    private static final int[] JUMP_DIRECTIONS = new int[2 * MAX_OFFSET + 1];
+
+    static {
+        for (int i = 0; i < JUMP_OFFSETS.length; i += 1) {
+            JUMP_DIRECTIONS[JUMP_OFFSETS[i] + MAX_OFFSET] = i;
+        }
+    }
+
     /** Return true iff (C, R) is a valid square designation. */
     static boolean validSquare(char c, char r) {
         return 'a' <= c && c <= 'e' && '1' <= r && r <= '5';
@@ -167,6 +297,16 @@ class Move {
         return _isJump;
     }
 
+    /** Return the number of jumps in me: 0 for a non-capturing move, 1 for
+     *  a single jump, and so on. */
+    int jumpCount() {
+        int n = 0;
+        for (Move m = this; m != null && m.isJump(); m = m._nextJump) {
+            n += 1;
+        }
+        return n;
+    }
+
     /** Return true iff this is a vestigial Move consisting only of a single
      *  position. */
     boolean isVestigial() {
@@ -342,17 +482,25 @@ class Move {
      *  initial jump. */
     private Move _nextJump;
 
-    /* Used for the Move factory. */
+    /** For a jump, the multi-jumps consisting of a jump from square K
+     *  followed by me, at index K (null if not yet created).  Null for
+     *  a non-capturing move. */
+    private final AtomicReferenceArray<Move> _extensions;
 
-    /** Holds the next Move object to be added to _internedMoves.
-     *  The factory method move tentatively fills it in, and then returns
-     *  it if it is unique (resetting _staged to null). */
-    private static Move _staged;
+    /* Used for the Move factory. */
 
-    /** The set of all distinct moves generated so far. */
-    private static HashMap<Move, Move> _internedMoves = new HashMap<>();
+    /** SINGLE_MOVES[F * (MAX_INDEX + 1) + T] is the single move or jump
+     *  from the square with linearized index F to that with index T. */
+    private static final Move[] SINGLE_MOVES =
+        new Move[(MAX_INDEX + 1) * (MAX_INDEX + 1)];
 
-    /** The identity function on Moves. */
-    static final Function<Move, Move> IDENTITY = k -> k;
+    static {
+        for (int from = 0; from <= MAX_INDEX; from += 1) {
+            for (int to = 0; to <= MAX_INDEX; to += 1) {
+                SINGLE_MOVES[from * (MAX_INDEX + 1) + to] =
+                    new Move(col(from), row(from), col(to), row(to), null);
+            }
+        }
+    }
 
 }
@@ -0,0 +1,69 @@
+package qirkat;
+
+import java.util.Arrays;
+
+/** A list of packed moves (see Move.pack).  Searches keep one
+ *  MoveBuffer for each ply and refill it at every node, so that
+ *  generating moves does no allocation once the buffers have grown to
+ *  their working sizes.
+ *  @author Yingying Chen
+ */
+class MoveBuffer {
+
+    /** An empty MoveBuffer. */
+    MoveBuffer() {
+        _moves = new long[INITIAL_CAPACITY];
+    }
+
+    /** Return the number of moves I contain. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff I contain no moves. */
+    boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /** Return my Kth move. */
+    long get(int k) {
+        assert k < _size;
+        return _moves[k];
+    }
+
+    /** Replace my Kth move with MOV. */
+    void set(int k, long mov) {
+        assert k < _size;
+        _moves[k] = mov;
+    }
+
+    /** Append MOV to me. */
+    void add(long mov) {
+        if (_size == _moves.length) {
+            _moves = Arrays.copyOf(_moves, 2 * _size);
+        }
+        _moves[_size] = mov;
+        _size += 1;
+    }
+
+    /** Remove all but my first N moves. */
+    void truncate(int n) {
+        assert n <= _size;
+        _size = n;
+    }
+
+    /** Remove all my moves. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Initial number of moves that fit without reallocation. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** My moves, in _moves[0 .. _size-1]. */
+    private long[] _moves;
+
+    /** Number of moves in me. */
+    private int _size;
+
+}
@@ -0,0 +1,164 @@
+package qirkat;
+
+import static qirkat.Move.*;
+
+/** A lazy source of the legal moves from a position, as packed moves
+ *  (see Move.pack), for searches that often stop after the first few.
+ *  The moves come in stages: the hash move, then the captures, longest
+ *  chains first, then the killer moves, and then the other
+ *  non-capturing moves in decreasing order of their history scores.
+ *  Each stage is generated only once the previous one is used up, and
+ *  moves already produced in an earlier stage are not repeated.  Ties
+ *  within a stage keep the order of Board.getMoves.
+ *  @author Yingying Chen
+ */
+class MoveSource {
+
+    /** Prepare to produce the moves from the current position of BOARD,
+     *  which must not change between calls to next, except by moves
+     *  that are taken back.  HASHMOVE is the best move found by an
+     *  earlier search (0 if none), KILLERS holds packed non-capturing
+     *  moves that recently caused cutoffs at the same depth (entries of
+     *  0 are ignored), and HISTORY[F][T] scores the non-capturing moves
+     *  from square F to square T.  The moves in HASHMOVE and KILLERS need
+     *  not be legal in this position.  KILLERS may be null for none, and
+     *  HISTORY may be null to leave non-capturing moves in the order of
+     *  Board.getMoves. */
+    void start(Board board, long hashMove, long[] killers, int[][] history) {
+        _board = board;
+        _hashMove = hashMove;
+        _killers = killers;
+        _history = history;
+        _stage = HASH_STAGE;
+        _moves.clear();
+        _next = 0;
+    }
+
+    /** Return the next move, or 0 if there are no more. */
+    long next() {
+        while (true) {
+            if (_next < _moves.size()) {
+                long mov = _moves.get(_next);
+                _next += 1;
+                if (_stage != DONE || !isKiller(mov)) {
+                    return mov;
+                }
+                continue;
+            }
+            switch (_stage) {
+            case HASH_STAGE:
+                _stage = CAPTURE_STAGE;
+                if (_hashMove != 0 && _board.isLegal(_hashMove)) {
+                    return _hashMove;
+                }
+                break;
+            case CAPTURE_STAGE:
+                _board.getCaptures(_moves);
+                _stage = _moves.isEmpty() ? KILLER_STAGE : DONE;
+                removeHashMove();
+                sortMoves(true);
+                break;
+            case KILLER_STAGE:
+                _stage = QUIET_STAGE;
+                if (_killers != null) {
+                    _moves.clear();
+                    for (long killer : _killers) {
+                        if (killer != 0 && killer != _hashMove
+                            && _board.isLegal(killer)) {
+                            _moves.add(killer);
+                        }
+                    }
+                    _next = 0;
+                }
+                break;
+            case QUIET_STAGE:
+                _board.getQuietMoves(_moves);
+                _stage = DONE;
+                removeHashMove();
+                if (_history != null) {
+                    sortMoves(false);
+                }
+                break;
+            default:
+                return 0;
+            }
+        }
+    }
+
+    /** Return true iff MOV is one of my killer moves. */
+    private boolean isKiller(long mov) {
+        if (_killers != null) {
+            for (long killer : _killers) {
+                if (killer == mov) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Remove my hash move from _moves, if present, and prepare to
+     *  produce the rest, starting at the beginning. */
+    private void removeHashMove() {
+        int n = 0;
+        for (int i = 0; i < _moves.size(); i += 1) {
+            if (_moves.get(i) != _hashMove) {
+                _moves.set(n, _moves.get(i));
+                n += 1;
+            }
+        }
+        _moves.truncate(n);
+        _next = 0;
+    }
+
+    /** Sort _moves into decreasing order of their number of jumps, if
+     *  CAPTURES, and otherwise of their history scores.  Equal moves
+     *  keep their order. */
+    private void sortMoves(boolean captures) {
+        int n = _moves.size();
+        if (_scores.length < n) {
+            _scores = new int[2 * n];
+        }
+        for (int i = 0; i < n; i += 1) {
+            long mov = _moves.get(i);
+            int score = captures ? packedJumpCount(mov)
+                : _history[packedFrom(mov)][packedTo(mov)];
+            int j;
+            for (j = i; j > 0 && _scores[j - 1] < score; j -= 1) {
+                _scores[j] = _scores[j - 1];
+                _moves.set(j, _moves.get(j - 1));
+            }
+            _scores[j] = score;
+            _moves.set(j, mov);
+        }
+    }
+
+    /** Stages of move generation, in order. */
+    private static final int HASH_STAGE = 0, CAPTURE_STAGE = 1,
+        KILLER_STAGE = 2, QUIET_STAGE = 3, DONE = 4;
+
+    /** The board whose moves I produce. */
+    private Board _board;
+
+    /** The hash move, killer moves, and history scores passed to
+     *  start. */
+    private long _hashMove;
+    /** See _hashMove. */
+    private long[] _killers;
+    /** See _hashMove. */
+    private int[][] _history;
+
+    /** The stage that generates the next moves after those in
+     *  _moves. */
+    private int _stage;
+
+    /** The moves of the current stage, and the index of the next one
+     *  to produce. */
+    private final MoveBuffer _moves = new MoveBuffer();
+    /** See _moves. */
+    private int _next;
+
+    /** Scratch space for sortMoves. */
+    private int[] _scores = new int[64];
+
+}
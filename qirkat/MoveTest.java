@@ -26,6 +26,42 @@ public class MoveTest {
         assertTrue("move should be jump", m.isJump());
     }
 
+    @Test
+    public void testInterning() throws InterruptedException {
+        assertSame(move('a', '3', 'b', '2'), parseMove("a3-b2"));
+        assertSame(parseMove("a1-c3-e5-c5"), parseMove("a1-c3-e5-c5"));
+
+        Move[] results = new Move[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i += 1) {
+            final int k = i;
+            threads[i] = new Thread(() -> {
+                results[k] = parseMove("e1-c3-a5-a3-c1");
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i += 1) {
+            threads[i].join();
+            assertSame(results[0], results[i]);
+        }
+    }
+
+    @Test
+    public void testPacking() {
+        for (String str : new String[] { "a3-b2", "c3-b3", "e5-d4",
+                                         "a3-a5", "e1-c3-a5-a3-c1",
+                                         "c3-e3-e5-c5-c3" }) {
+            Move m = parseMove(str);
+            long packed = pack(m);
+            assertNotEquals(0, packed);
+            assertSame(m, unpack(packed));
+            assertEquals(m.fromIndex(), packedFrom(packed));
+            assertEquals(m.jumpCount(), packedJumpCount(packed));
+        }
+        assertEquals(index('c', '1'),
+                     packedTo(pack(parseMove("e1-c3-a5-a3-c1"))));
+    }
+
     @Test
     public void testString() {
         assertEquals("a3-b2", move('a', '3', 'b', '2').toString());
@@ -34,6 +70,18 @@ public class MoveTest {
                                       move('a', '5', 'c', '3')).toString());
     }
 
+    @Test
+    public void testBadJumpChain() {
+        Move next = move('a', '5', 'c', '3');
+        try {
+            move('a', '1', 'a', '3', next);
+            fail("accepted a jump that does not end where the next starts");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+        assertEquals("a3-a5-c3", move('a', '3', 'a', '5', next).toString());
+    }
+
     @Test
     public void testParseString() {
         assertEquals("a3-b2", parseMove("a3-b2").toString());
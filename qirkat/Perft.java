@@ -0,0 +1,158 @@
+package qirkat;
+
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static qirkat.PieceColor.*;
+
+/** Move-path enumeration ("perft"): counts the positions reachable by
+ *  exactly N moves from a given position.  The counts check the move
+ *  generator against known values, and the time taken measures its
+ *  speed.  Usable through the 'perft' command or standalone:
+ *
+ *      java qirkat.Perft N [divide] [--threads=K] [white|black BOARD]
+ *
+ *  where N >= 0, K >= 1, and BOARD is as for the 'set' command (the
+ *  initial position by default).
+ *  @author Yingying Chen
+ */
+class Perft {
+
+    /** Run perft as described in the class comment, using ARGS. */
+    public static void main(String[] args) {
+        int depth, threads;
+        boolean divide;
+        Board board = new Board();
+        try {
+            depth = Integer.parseInt(args[0]);
+            divide = false;
+            threads = 1;
+            for (int i = 1; i < args.length; i += 1) {
+                if (args[i].equals("divide")) {
+                    divide = true;
+                } else if (args[i].startsWith("--threads=")) {
+                    threads = Integer.parseInt(args[i].substring(10));
+                } else {
+                    board.setPieces(args[i + 1],
+                                    args[i].equalsIgnoreCase("black")
+                                    ? BLACK : WHITE);
+                    i += 1;
+                }
+            }
+            if (depth < 0 || threads < 1) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException
+                 | ArrayIndexOutOfBoundsException excp) {
+            System.err.println("Usage: java qirkat.Perft N [divide]"
+                               + " [--threads=K] [white|black BOARD]");
+            System.exit(1);
+            return;
+        }
+        System.out.println(report(board, depth, divide, threads));
+    }
+
+    /** Return the number of move sequences of length DEPTH from the
+     *  position on BOARD, which is restored afterwards. */
+    static long count(Board board, int depth) {
+        MoveBuffer[] buffers = new MoveBuffer[depth];
+        for (int i = 0; i < depth; i += 1) {
+            buffers[i] = new MoveBuffer();
+        }
+        return count(board, depth, buffers);
+    }
+
+    /** Return count(BOARD, DEPTH), using BUFFERS[DEPTH - 1] to hold the
+     *  moves from BOARD, BUFFERS[DEPTH - 2] for the moves after each of
+     *  those, and so on. */
+    private static long count(Board board, int depth, MoveBuffer[] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        MoveBuffer moves = buffers[depth - 1];
+        board.getMoves(moves);
+        if (depth == 1) {
+            return moves.size();
+        }
+        long total = 0;
+        for (int i = 0; i < moves.size(); i += 1) {
+            board.makeTrialMove(moves.get(i));
+            total += count(board, depth - 1, buffers);
+            board.undoTrialMove();
+        }
+        return total;
+    }
+
+    /** Return the number of move sequences of length DEPTH > 0 from the
+     *  position on BOARD that begin with each of its legal moves, in the
+     *  order of BOARD.getMoves().  With THREADS > 1, the moves are divided
+     *  among that many threads, each working on its own copy of BOARD. */
+    static long[] divide(Board board, int depth, int threads) {
+        ArrayList<Move> moves = board.getMoves();
+        long[] counts = new long[moves.size()];
+        AtomicInteger next = new AtomicInteger(0);
+        Runnable worker = () -> {
+            Board b = new Board(board);
+            MoveBuffer[] buffers = new MoveBuffer[depth - 1];
+            for (int i = 0; i < buffers.length; i += 1) {
+                buffers[i] = new MoveBuffer();
+            }
+            for (int i = next.getAndIncrement(); i < counts.length;
+                 i = next.getAndIncrement()) {
+                b.makeTrialMove(moves.get(i));
+                counts[i] = count(b, depth - 1, buffers);
+                b.undoTrialMove();
+            }
+        };
+
+        if (threads <= 1) {
+            worker.run();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads];
+                for (int t = 0; t < threads; t += 1) {
+                    tasks[t] = pool.submit(worker);
+                }
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return counts;
+    }
+
+    /** Return a report of perft to DEPTH from the position on BOARD,
+     *  using THREADS threads: the total number of nodes, the time
+     *  taken, and the rate in nodes per second, preceded, if DIVIDE,
+     *  by the count for each legal move. */
+    static String report(Board board, int depth, boolean divide,
+                         int threads) {
+        Formatter out = new Formatter();
+        long start = System.nanoTime();
+        long total;
+        if (depth == 0) {
+            total = 1;
+        } else {
+            long[] counts = divide(board, depth, threads);
+            ArrayList<Move> moves = board.getMoves();
+            total = 0;
+            for (int i = 0; i < counts.length; i += 1) {
+                total += counts[i];
+                if (divide) {
+                    out.format("%s: %d%n", moves.get(i), counts[i]);
+                }
+            }
+        }
+        long msec = Math.max(1, (System.nanoTime() - start) / 1000000);
+        out.format("Nodes: %d (%d msec, %d nodes/sec)", total, msec,
+                   total * 1000 / msec);
+        return out.toString();
+    }
+
+}
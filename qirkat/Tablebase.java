@@ -0,0 +1,513 @@
+package qirkat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static qirkat.PieceColor.*;
+
+/** An endgame tablebase: the outcome under perfect play of every
+ *  position with at most a given number of pieces, together with its
+ *  distance, the number of moves (plies) until the game ends.
+ *
+ *  A tablebase is built by retrograde analysis and written to a file,
+ *  either by generate or standalone:
+ *
+ *      java qirkat.Tablebase N FILE [--threads=K]
+ *
+ *  which uses K threads, by default one per available processor.
+ *
+ *  It is then read through a read-only memory mapping of that file (see
+ *  open), so that only the parts actually probed are brought into
+ *  memory.  Probes are safe from any number of threads.
+ *
+ *  Each position has a one-byte entry: 1 + its distance, or UNKNOWN
+ *  (0) if its distance exceeds MAX_DISTANCE.  Since a player who cannot
+ *  move loses, the player to move wins iff the distance is odd.  There
+ *  are no draws: every move either captures, advances a piece, or moves
+ *  it sideways in the direction it last moved sideways, so no position
+ *  can recur and every game ends.
+ *
+ *  Positions are grouped into classes by their numbers of white and
+ *  black pieces.  Within a class, a position's index combines the rank
+ *  of its set of white squares among all such sets, the rank of its set
+ *  of black squares among those of the remaining squares, a base-3
+ *  digit for the horizontal-move restriction of each piece (in order of
+ *  their squares), and the player to move (see index).  The file holds
+ *  a header (MAGIC and the maximum number of pieces) followed by the
+ *  entries of each class in turn, in increasing order of the total
+ *  number of pieces and then of the number of white pieces.
+ *  @author Yingying Chen
+ */
+class Tablebase {
+
+    /** Run the generator as described in the class comment, using
+     *  ARGS. */
+    public static void main(String[] args) {
+        int maxPieces, threads;
+        String fileName;
+        try {
+            maxPieces = Integer.parseInt(args[0]);
+            fileName = args[1];
+            threads = Runtime.getRuntime().availableProcessors();
+            for (int i = 2; i < args.length; i += 1) {
+                if (args[i].startsWith("--threads=")) {
+                    threads = Integer.parseInt(args[i].substring(10));
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+            }
+            if (maxPieces < 0 || maxPieces > MAX_PIECES || threads < 1) {
+                throw new IllegalArgumentException();
+            }
+        } catch (IllegalArgumentException
+                 | ArrayIndexOutOfBoundsException excp) {
+            System.err.printf("Usage: java qirkat.Tablebase N FILE"
+                              + " [--threads=K]   (0 <= N <= %d;"
+                              + " K defaults to the number of"
+                              + " processors)%n", MAX_PIECES);
+            System.exit(1);
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            generate(maxPieces, fileName, threads);
+            System.out.printf("Wrote %s (%d msec)%n", fileName,
+                              (System.nanoTime() - start) / 1000000);
+        } catch (IOException excp) {
+            System.err.printf("Could not write tablebase: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Entry of a position whose outcome is not known. */
+    static final int UNKNOWN = 0;
+
+    /** Largest distance that can be recorded. */
+    static final int MAX_DISTANCE = 254;
+
+    /** Largest number of pieces for which tablebases can be built.  A
+     *  tablebase for four pieces is a 34 MB file.  One for five would
+     *  take 826 MB, all of it held in memory while it is built, and the
+     *  classes with six pieces have too many positions to index with an
+     *  int. */
+    static final int MAX_PIECES = 4;
+
+    /** Return true iff ENTRY, which must not be UNKNOWN, is the entry of
+     *  a position that the player to move wins. */
+    static boolean wins(int entry) {
+        return distance(entry) % 2 == 1;
+    }
+
+    /** Return the distance recorded in ENTRY, which must not be
+     *  UNKNOWN. */
+    static int distance(int entry) {
+        return entry - 1;
+    }
+
+    /** Return the tablebase in FILENAME, written by generate. */
+    static Tablebase open(String fileName) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES
+                || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(fileName + ": not a tablebase");
+            }
+            MappedByteBuffer data =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int maxPieces = data.getInt(4);
+            if (data.getInt(0) != MAGIC || maxPieces < 0
+                || maxPieces > MAX_PIECES
+                || channel.size() != fileSize(maxPieces)) {
+                throw new IOException(fileName + ": not a tablebase");
+            }
+            return new Tablebase(data, maxPieces);
+        }
+    }
+
+    /** A tablebase for positions of at most MAXPIECES pieces, whose file
+     *  contents are DATA. */
+    private Tablebase(MappedByteBuffer data, int maxPieces) {
+        _data = data;
+        _maxPieces = maxPieces;
+        _offsets = new int[maxPieces + 1][maxPieces + 1];
+        int offset = HEADER_BYTES;
+        for (int total = 0; total <= maxPieces; total += 1) {
+            for (int white = 0; white <= total; white += 1) {
+                _offsets[white][total - white] = offset;
+                offset += classSize(white, total - white);
+            }
+        }
+    }
+
+    /** Return the largest number of pieces in the positions I cover. */
+    int maxPieces() {
+        return _maxPieces;
+    }
+
+    /** Return true iff I cover the position on BOARD. */
+    boolean covers(Board board) {
+        return Integer.bitCount(board.occupied()) <= _maxPieces;
+    }
+
+    /** Return the entry of the position on BOARD, or UNKNOWN if I do not
+     *  cover it. */
+    int probe(Board board) {
+        if (!covers(board)) {
+            return UNKNOWN;
+        }
+        int white = board.pieceCount(WHITE), black = board.pieceCount(BLACK);
+        return _data.get(_offsets[white][black] + index(board)) & 0xff;
+    }
+
+    /** Build the tablebase for positions of at most MAXPIECES pieces,
+     *  using THREADS threads, and write it to FILENAME.  The classes are
+     *  solved in increasing order of their numbers of pieces, so that
+     *  the positions reached by captures have all been solved when they
+     *  are needed. */
+    static void generate(int maxPieces, String fileName, int threads)
+        throws IOException {
+        byte[][][] tables = new byte[maxPieces + 1][maxPieces + 1][];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int total = 0; total <= maxPieces; total += 1) {
+                for (int white = 0; white <= total; white += 1) {
+                    solve(tables, white, total - white, pool, threads);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(maxPieces);
+            for (int total = 0; total <= maxPieces; total += 1) {
+                for (int white = 0; white <= total; white += 1) {
+                    out.write(tables[white][total - white]);
+                }
+            }
+        }
+    }
+
+    /** Fill in TABLES[WHITE][BLACK], the entries for positions with WHITE
+     *  white and BLACK black pieces, given the entries for all classes
+     *  with fewer pieces, by retrograde analysis, using THREADS threads
+     *  from POOL for the first pass.  That pass looks at each position's
+     *  moves once.  A position with no moves, or with captures (which
+     *  are then all its moves, and lead to smaller classes), is settled
+     *  at once (see settle).  Any other position has only non-capturing
+     *  moves, which stay in the class, and COUNTS records how many.  The
+     *  settled positions are then taken in increasing order of their
+     *  distances D, and their predecessors by non-capturing moves are
+     *  found by unmaking moves (see predecessors).  A predecessor of a
+     *  position lost at D wins at D + 1, unless it has already been
+     *  settled at a smaller distance.  A predecessor of a position won
+     *  at D has its count reduced, and loses at D + 1 when its count
+     *  reaches 0, since then all its moves lead to wins for the
+     *  opponent, the slowest at D.  The threads of the first pass take
+     *  the positions in chunks, and each writes only its own positions'
+     *  entries and counts, so they share the arrays without locking. */
+    private static void solve(byte[][][] tables, int white, int black,
+                              ForkJoinPool pool, int threads) {
+        byte[] table = new byte[classSize(white, black)];
+        byte[] counts = new byte[table.length];
+        tables[white][black] = table;
+        AtomicInteger next = new AtomicInteger(0);
+        Runnable worker = () -> {
+            Board board = new Board();
+            MoveBuffer moves = new MoveBuffer();
+            for (int start = next.getAndAdd(CHUNK);
+                 start >= 0 && start < table.length;
+                 start = next.getAndAdd(CHUNK)) {
+                int end = Math.min(start + CHUNK, table.length);
+                for (int i = start; i < end; i += 1) {
+                    setPosition(board, white, black, i);
+                    board.getMoves(moves);
+                    if (moves.isEmpty()
+                        || Move.packedJumpCount(moves.get(0)) > 0) {
+                        table[i] = (byte) settle(tables, board, moves);
+                    } else {
+                        counts[i] = (byte) moves.size();
+                    }
+                }
+            }
+        };
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads];
+        for (int t = 0; t < threads; t += 1) {
+            tasks[t] = pool.submit(worker);
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        int last = 0;
+        for (byte entry : table) {
+            last = Math.max(last, entry & 0xff);
+        }
+        Board board = new Board(), predecessor = new Board();
+        int[] predecessors = new int[MAX_PREDECESSORS];
+        for (int distance = 0; distance < last && distance < MAX_DISTANCE;
+             distance += 1) {
+            for (int i = 0; i < table.length; i += 1) {
+                if ((table[i] & 0xff) != distance + 1) {
+                    continue;
+                }
+                setPosition(board, white, black, i);
+                boolean won = wins(distance + 1);
+                int n = predecessors(board, predecessor, predecessors);
+                for (int j = 0; j < n; j += 1) {
+                    int p = predecessors[j];
+                    if (table[p] != UNKNOWN) {
+                        continue;
+                    }
+                    if (won) {
+                        counts[p] -= 1;
+                    }
+                    if (!won || counts[p] == 0) {
+                        table[p] = (byte) (distance + 2);
+                        last = distance + 2;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return the entry of the position on BOARD, whose moves MOVES are
+     *  all captures or none, from the entries in TABLES for the smaller
+     *  classes that the captures lead to.  BOARD is restored on
+     *  return. */
+    private static int settle(byte[][][] tables, Board board,
+                              MoveBuffer moves) {
+        int win = Integer.MAX_VALUE, loss = 0;
+        boolean unknown = false;
+        for (int i = 0; i < moves.size(); i += 1) {
+            board.makeTrialMove(moves.get(i));
+            int entry = tables[board.pieceCount(WHITE)]
+                [board.pieceCount(BLACK)][index(board)] & 0xff;
+            board.undoTrialMove();
+            if (entry == UNKNOWN) {
+                unknown = true;
+            } else if (!wins(entry)) {
+                win = Math.min(win, distance(entry) + 1);
+            } else {
+                loss = Math.max(loss, distance(entry) + 1);
+            }
+        }
+        int distance = win != Integer.MAX_VALUE ? win
+            : unknown ? MAX_DISTANCE + 1 : loss;
+        return distance > MAX_DISTANCE ? UNKNOWN : distance + 1;
+    }
+
+    /** Store in RESULT the indices of the positions from which a
+     *  non-capturing move leads to the position on BOARD, and return
+     *  their number.  These are found by moving back each piece of the
+     *  player who has just moved to each empty neighboring square, with
+     *  each possible horizontal-move restriction, and keeping the
+     *  positions in which the move back is legal and restores BOARD's
+     *  restrictions.  SCRATCH is used to hold those positions. */
+    private static int predecessors(Board board, Board scratch,
+                                    int[] result) {
+        PieceColor mover = board.whoseMove().opposite();
+        int movers = board.pieces(mover),
+            others = board.pieces(mover.opposite()),
+            left = board.leftMoved(), right = board.rightMoved();
+        int n = 0;
+        for (int p = movers; p != 0; p &= p - 1) {
+            int to = Integer.numberOfTrailingZeros(p), bit = p & -p;
+            for (int from : Board.neighbors(to)) {
+                if ((board.occupied() & Board.bit(from)) != 0
+                    || ((left & bit) != 0) != (to == from - 1)
+                    || ((right & bit) != 0) != (to == from + 1)) {
+                    continue;
+                }
+                int moved = movers ^ bit ^ Board.bit(from);
+                for (int r = 0; r < 3; r += 1) {
+                    int fromLeft = r == 1 ? Board.bit(from) : 0,
+                        fromRight = r == 2 ? Board.bit(from) : 0;
+                    if (mover == WHITE) {
+                        scratch.setPosition(moved, others,
+                                            (left & ~bit) | fromLeft,
+                                            (right & ~bit) | fromRight,
+                                            mover);
+                    } else {
+                        scratch.setPosition(others, moved,
+                                            (left & ~bit) | fromLeft,
+                                            (right & ~bit) | fromRight,
+                                            mover);
+                    }
+                    if (scratch.isLegal(Move.packStep(from, to))) {
+                        result[n] = index(scratch);
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Return the number of positions with WHITE white and BLACK black
+     *  pieces. */
+    private static int classSize(int white, int black) {
+        return CHOOSE[SQUARES][white] * CHOOSE[SQUARES - white][black]
+            * POWERS_OF_3[white + black] * 2;
+    }
+
+    /** Return the size of the file holding a tablebase for positions of
+     *  at most MAXPIECES pieces. */
+    private static long fileSize(int maxPieces) {
+        long size = HEADER_BYTES;
+        for (int total = 0; total <= maxPieces; total += 1) {
+            for (int white = 0; white <= total; white += 1) {
+                size += classSize(white, total - white);
+            }
+        }
+        return size;
+    }
+
+    /** Return the index of the position on BOARD within its class. */
+    static int index(Board board) {
+        int white = board.pieces(WHITE), black = board.pieces(BLACK),
+            left = board.leftMoved(), right = board.rightMoved();
+        int blackCount = Integer.bitCount(black);
+        int index = rank(white, 0) * CHOOSE[SQUARES - Integer.bitCount(white)]
+            [blackCount] + rank(black, white);
+        int restrictions = 0, digit = 1;
+        for (int p = white | black; p != 0; p &= p - 1) {
+            int b = p & -p;
+            restrictions += digit * ((left & b) != 0 ? 1
+                                     : (right & b) != 0 ? 2 : 0);
+            digit *= 3;
+        }
+        index = index * digit + restrictions;
+        return 2 * index + (board.whoseMove() == WHITE ? 0 : 1);
+    }
+
+    /** Set BOARD to the position with index INDEX in the class with WHITE
+     *  white and BLACK black pieces (the inverse of index). */
+    private static void setPosition(Board board, int white, int black,
+                                    int index) {
+        PieceColor next = index % 2 == 0 ? WHITE : BLACK;
+        index /= 2;
+        int restrictions = index % POWERS_OF_3[white + black];
+        index /= POWERS_OF_3[white + black];
+        int blacks = CHOOSE[SQUARES - white][black];
+        int whiteMask = unrank(index / blacks, white, 0),
+            blackMask = unrank(index % blacks, black, whiteMask);
+        int left, right;
+        left = right = 0;
+        for (int p = whiteMask | blackMask; p != 0; p &= p - 1) {
+            switch (restrictions % 3) {
+            case 1:
+                left |= p & -p;
+                break;
+            case 2:
+                right |= p & -p;
+                break;
+            default:
+                break;
+            }
+            restrictions /= 3;
+        }
+        board.setPosition(whiteMask, blackMask, left, right, next);
+    }
+
+    /** Return the rank of the set of squares MASK among all sets of the
+     *  same size drawn from the squares not in SKIP (which must be
+     *  disjoint from MASK), in colexicographic order. */
+    private static int rank(int mask, int skip) {
+        int rank = 0, i = 1;
+        for (; mask != 0; mask &= mask - 1) {
+            int b = mask & -mask;
+            int k = Integer.numberOfTrailingZeros(b)
+                - Integer.bitCount(skip & (b - 1));
+            rank += CHOOSE[k][i];
+            i += 1;
+        }
+        return rank;
+    }
+
+    /** Return the set of N squares not in SKIP with rank RANK (the
+     *  inverse of rank). */
+    private static int unrank(int rank, int n, int skip) {
+        int chosen = 0, k = SQUARES - Integer.bitCount(skip) - 1;
+        for (int i = n; i > 0; i -= 1) {
+            while (CHOOSE[k][i] > rank) {
+                k -= 1;
+            }
+            rank -= CHOOSE[k][i];
+            chosen |= Board.bit(k);
+            k -= 1;
+        }
+        int mask = 0;
+        for (int s = 0, j = 0; s < SQUARES; s += 1) {
+            if ((skip & Board.bit(s)) == 0) {
+                if ((chosen & Board.bit(j)) != 0) {
+                    mask |= Board.bit(s);
+                }
+                j += 1;
+            }
+        }
+        return mask;
+    }
+
+    /** Number of squares on the board. */
+    private static final int SQUARES = Move.MAX_INDEX + 1;
+
+    /** CHOOSE[N][K] is the binomial coefficient N choose K. */
+    private static final int[][] CHOOSE = new int[SQUARES + 1][SQUARES + 1];
+
+    /** POWERS_OF_3[K] is 3**K. */
+    private static final int[] POWERS_OF_3 = new int[MAX_PIECES + 1];
+
+    static {
+        for (int n = 0; n <= SQUARES; n += 1) {
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k <= n; k += 1) {
+                CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+            }
+        }
+        POWERS_OF_3[0] = 1;
+        for (int k = 1; k <= MAX_PIECES; k += 1) {
+            POWERS_OF_3[k] = 3 * POWERS_OF_3[k - 1];
+        }
+    }
+
+    /** First four bytes of a tablebase file ("QTB1"). */
+    private static final int MAGIC = 0x51544231;
+
+    /** Size of the file header: MAGIC and the maximum number of
+     *  pieces. */
+    private static final int HEADER_BYTES = 8;
+
+    /** Upper limit on the number of positions that lead to a given
+     *  position by non-capturing moves: three restrictions for each
+     *  neighbor of each piece. */
+    private static final int MAX_PREDECESSORS = MAX_PIECES * 8 * 3;
+
+    /** Number of positions handed to a thread at a time during
+     *  generation. */
+    private static final int CHUNK = 1 << 12;
+
+    /** The contents of my file. */
+    private final MappedByteBuffer _data;
+
+    /** The largest number of pieces in the positions I cover. */
+    private final int _maxPieces;
+
+    /** _offsets[W][B] is the position in _data of the entries for the
+     *  class with W white and B black pieces. */
+    private final int[][] _offsets;
+
+}
@@ -0,0 +1,102 @@
+package qirkat;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static qirkat.PieceColor.*;
+
+/** Tests of the Tablebase class.
+ *  @author Yingying Chen
+ */
+public class TablebaseTest {
+
+    /** Return the distance of the position on BOARD, found by exhaustive
+     *  search, using and updating the results in KNOWN. */
+    private static int distance(Board board, HashMap<Long, Integer> known) {
+        Integer result = known.get(board.key());
+        if (result != null) {
+            return result;
+        }
+        MoveBuffer moves = new MoveBuffer();
+        board.getMoves(moves);
+        int win = Integer.MAX_VALUE, loss = 0;
+        for (int i = 0; i < moves.size(); i += 1) {
+            board.makeTrialMove(moves.get(i));
+            int d = distance(board, known) + 1;
+            board.undoTrialMove();
+            if (d % 2 == 1) {
+                win = Math.min(win, d);
+            } else {
+                loss = Math.max(loss, d);
+            }
+        }
+        result = win != Integer.MAX_VALUE ? win : loss;
+        known.put(board.key(), result);
+        return result;
+    }
+
+    @Test
+    public void testAgainstSearch() throws IOException {
+        File file = File.createTempFile("qirkat", ".tb");
+        file.deleteOnExit();
+        Tablebase.generate(3, file.getPath(), 2);
+        Tablebase tablebase = Tablebase.open(file.getPath());
+        assertEquals(3, tablebase.maxPieces());
+
+        Board b = new Board();
+        assertFalse(tablebase.covers(b));
+        assertEquals(Tablebase.UNKNOWN, tablebase.probe(b));
+
+        b.setPosition(Board.bit(0), 0, 0, 0, BLACK);
+        assertEquals(0, Tablebase.distance(tablebase.probe(b)));
+        assertFalse(Tablebase.wins(tablebase.probe(b)));
+
+        Random random = new Random(0);
+        HashMap<Long, Integer> known = new HashMap<>();
+        for (int t = 0; t < 2000; t += 1) {
+            int white = 0, black = 0, left = 0, right = 0;
+            int pieces = 2 + random.nextInt(2);
+            while (Integer.bitCount(white | black) < pieces) {
+                int k = Board.bit(random.nextInt(25));
+                if (((white | black) & k) == 0) {
+                    if (random.nextBoolean()) {
+                        white |= k;
+                    } else {
+                        black |= k;
+                    }
+                    int r = random.nextInt(3);
+                    left |= r == 1 ? k : 0;
+                    right |= r == 2 ? k : 0;
+                }
+            }
+            b.setPosition(white, black, left, right,
+                          random.nextBoolean() ? WHITE : BLACK);
+            int entry = tablebase.probe(b);
+            assertNotEquals(Tablebase.UNKNOWN, entry);
+            assertEquals(b.toString(), distance(b, known),
+                         Tablebase.distance(entry));
+        }
+    }
+
+    @Test
+    public void testBadFile() throws IOException {
+        File file = File.createTempFile("qirkat", ".tb");
+        file.deleteOnExit();
+        try (FileWriter out = new FileWriter(file)) {
+            out.write("not a tablebase");
+        }
+        try {
+            Tablebase.open(file.getPath());
+            fail("opened a file that is not a tablebase");
+        } catch (IOException excp) {
+            /* Expected. */
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package qirkat;
+
+import java.util.Arrays;
+
+/** A fixed-size table of search results, indexed by the Zobrist keys of
+ *  Board positions.  Each entry records the depth to which its position
+ *  was searched, the value found, whether that value is exact or only a
+ *  bound, the best move found (as a packed move), and the search that
+ *  stored it.  A table may be kept from one search to the next; entries
+ *  left by earlier searches stay usable, but are the first to be
+ *  replaced.
+ *
+ *  The table may be shared by several searching threads without
+ *  locking.  The depth, bound, and value of an entry are packed into a
+ *  single long, and the entry's key is stored xor'ed with that long, so
+ *  that an entry torn by simultaneous writes fails to match any key and
+ *  is simply ignored.  The best move is only a hint for move ordering
+ *  and is not protected in this way.
+ *  @author Yingying Chen
+ */
+class TranspositionTable {
+
+    /** Kinds of stored values.  EXACT values are the true minimax
+     *  values to the stored depth; LOWER and UPPER values are bounds
+     *  produced by a cutoff. */
+    static enum Bound {
+        EXACT, LOWER, UPPER
+    }
+
+    /** Policies for deciding whether a new result may replace an
+     *  existing entry for a different position in the same slot. */
+    static enum Replacement {
+        /** Always keep the newest result. */
+        ALWAYS,
+        /** Keep the result of the deeper search, unless the existing
+         *  one is left from an earlier search. */
+        DEPTH;
+
+        /** Return the Replacement named NAME, ignoring case. */
+        static Replacement parse(String name) {
+            return valueOf(name.toUpperCase());
+        }
+    }
+
+    /** Approximate number of bytes occupied by one entry. */
+    static final int ENTRY_BYTES = 8 + 8 + 8;
+
+    /** Upper limit on the number of entries, chosen so that the two
+     *  AIs' tables fit together in a modest heap. */
+    private static final int MAX_ENTRIES = 1 << 24;
+
+    /** The largest memory budget (in megabytes) that a table can
+     *  use in full. */
+    static final int MAX_MEGABYTES = (MAX_ENTRIES * ENTRY_BYTES) >> 20;
+
+    /** A new, empty table occupying at most about MEGABYTES megabytes,
+     *  using POLICY to resolve collisions. */
+    TranspositionTable(int megabytes, Replacement policy) {
+        long entries = ((long) megabytes << 20) / ENTRY_BYTES;
+        entries = Math.max(1, Math.min(entries, MAX_ENTRIES));
+        int size = Integer.highestOneBit((int) entries);
+        _mask = size - 1;
+        _keys = new long[size];
+        _data = new long[size];
+        _moves = new long[size];
+        _policy = policy;
+    }
+
+    /** Return the number of entries I can hold. */
+    int size() {
+        return _keys.length;
+    }
+
+    /** Return the entry for the position with KEY, packed into a long, or
+     *  0 if there is none.  Use depth, bound, and score to unpack it. */
+    long probe(long key) {
+        int slot = slot(key);
+        long data = _data[slot];
+        return data != 0 && (_keys[slot] ^ data) == key ? data : 0;
+    }
+
+    /** Return the search depth of the packed entry ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the kind of value stored in the packed entry ENTRY. */
+    static Bound bound(long entry) {
+        return BOUNDS[((int) (entry >>> BOUND_SHIFT) & BOUND_MASK) - 1];
+    }
+
+    /** Return the value stored in the packed entry ENTRY. */
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /** Return the number of the search that stored the packed entry
+     *  ENTRY, modulo 2**8. */
+    static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    /** Return the best move stored for the position with KEY as a packed
+     *  move (see Move.pack), or 0 if there is none.  The result may
+     *  occasionally belong to another position, and should only be used
+     *  as a hint. */
+    long move(long key) {
+        int slot = slot(key);
+        return (_keys[slot] ^ _data[slot]) == key ? _moves[slot] : 0;
+    }
+
+    /** Record that the position with KEY, searched to DEPTH, has a value
+     *  of kind BOUND given by SCORE, and best packed move BEST (0 if
+     *  none), subject to my replacement policy.  Results for the same
+     *  position always replace older ones. */
+    void store(long key, int depth, Bound bound, int score, long best) {
+        int slot = slot(key);
+        long old = _data[slot];
+        if (old != 0 && (_keys[slot] ^ old) != key
+            && _policy == Replacement.DEPTH && depth(old) > depth
+            && age(old) == _age) {
+            return;
+        }
+        long data = (score & SCORE_MASK)
+            | ((long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+            | ((long) (bound.ordinal() + 1) << BOUND_SHIFT)
+            | ((long) _age << AGE_SHIFT);
+        _moves[slot] = best;
+        _data[slot] = data;
+        _keys[slot] = key ^ data;
+    }
+
+    /** Begin a new search: entries stored from now on are marked as
+     *  newer than all existing ones. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_data, 0);
+        Arrays.fill(_moves, 0);
+        _age = 0;
+    }
+
+    /** Return the slot used for KEY. */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & _mask;
+    }
+
+    /** Layout of a packed entry: the score in the low 32 bits, then an
+     *  8-bit depth, then 1 + the ordinal of the Bound in 2 bits, then
+     *  the 8-bit age of the search that stored it. */
+    private static final int DEPTH_SHIFT = 32, BOUND_SHIFT = 40,
+        AGE_SHIFT = 42, DEPTH_MASK = 0xff, BOUND_MASK = 3, AGE_MASK = 0xff;
+
+    /** Mask selecting the score field of a packed entry. */
+    private static final long SCORE_MASK = 0xffffffffL;
+
+    /** Cached values of Bound. */
+    private static final Bound[] BOUNDS = Bound.values();
+
+    /** Mask selecting a slot number from a hashed key. */
+    private final int _mask;
+
+    /** Keys of the stored positions, each xor'ed with its packed entry. */
+    private final long[] _keys;
+
+    /** Packed entries (0 for an empty slot). */
+    private final long[] _data;
+
+    /** Stored best moves, packed. */
+    private final long[] _moves;
+
+    /** Policy for replacing entries for other positions. */
+    private final Replacement _policy;
+
+    /** Number of the current search, modulo 2**8. */
+    private int _age;
+
+}
@@ -11,7 +11,8 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(MoveTest.class, BoardTest.class,
-                                      CommandTest.class));
+                                      CommandTest.class, AITest.class,
+                                      GameTest.class, TablebaseTest.class));
     }
 
 }